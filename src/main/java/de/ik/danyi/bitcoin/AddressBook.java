@@ -0,0 +1,389 @@
+package de.ik.danyi.bitcoin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.security.SecureRandom;
+import java.util.*;
+
+/**
+ * A csomópontok címeit és a velük kapcsolatos tapasztalatainkat tároló címjegyzék, amelyet a program
+ * leállításakor a lemezre mentünk, így induláskor a korábban bevált csomópontokhoz közvetlenül
+ * kapcsolódhatunk; a DNS szerverekhez csak akkor fordulunk, ha nincs kipróbálható cím.
+ *
+ * A Bitcoin Core címkezeléséhez hasonlóan a címek két csoportba kerülnek:
+ * - új (new): a csomópontoktól (addr üzenet) vagy a DNS szerverektől kapott, még ki nem próbált címek,
+ * - kipróbált (tried): azon címek, amelyekkel már sikeres kapcsolatot (kézfogást) létesítettünk.
+ * Mindkét csoport rögzített számú, rögzített méretű rekeszből áll; egy cím rekesze a cím /16-os
+ * hálózati csoportjából és egy véletlen kulcsból adódik. Így a címjegyzék mérete korlátos, és egy
+ * címekkel elárasztó csomópont (vagy hálózat) csak néhány rekeszt tud kiszorítani.
+ *
+ * Címenként nyilvántartjuk az utolsó kapcsolódási kísérlet és az utolsó sikeres kapcsolat idejét,
+ * a sikertelen kísérletek számát és a mért válaszidőt (simított átlag).
+ *
+ * A fájl formátuma soronként: ip port tried lastSeen lastAttempt lastSuccess failures latency
+ */
+public class AddressBook {
+
+    private static final int NEW_BUCKETS = 64;
+    private static final int TRIED_BUCKETS = 16;
+    private static final int BUCKET_SIZE = 16;
+
+    // a sikertelen kapcsolódás után ennyi ideig (ms) nem próbálkozunk újra, a hibák számával duplázva
+    private static final long RETRY_DELAY = 60 * 1000;
+
+    // ennyi egymást követő sikertelen kísérlet után a címet elfelejtjük
+    private static final int MAX_FAILURES = 10;
+
+    /**
+     * Egy cím és a hozzá tartozó tapasztalataink.
+     */
+    public static class Entry {
+        private final InetSocketAddress address;
+        private boolean tried = false;
+        private long lastSeen;
+        private long lastAttempt = 0;
+        private long lastSuccess = 0;
+        private int failures = 0;
+        private long latency = -1;
+
+        private Entry(InetSocketAddress address, long lastSeen){
+            this.address = address;
+            this.lastSeen = lastSeen;
+        }
+
+        public InetSocketAddress getAddress(){
+            return address;
+        }
+
+        public boolean isTried(){
+            return tried;
+        }
+
+        public long getLastSuccess(){
+            return lastSuccess;
+        }
+
+        public long getLatency(){
+            return latency;
+        }
+
+        // a cím most kipróbálható-e (a sikertelen kísérletek után várakozunk)
+        private boolean isRetryable(long now){
+            return failures == 0 || now - lastAttempt > RETRY_DELAY << Math.min(failures - 1, 10);
+        }
+    }
+
+    private final File file;
+    private final Random random = new SecureRandom();
+
+    // a rekeszek kiosztásához használt véletlen kulcs (a fájllal együtt nem mentjük, így minden
+    // induláskor más kiosztás adódik)
+    private final long bucketKey = random.nextLong();
+
+    private final Map<InetSocketAddress, Entry> entries;
+    private final List<Set<Entry>> newBuckets;
+    private final List<Set<Entry>> triedBuckets;
+
+    public AddressBook(File file){
+        this.file = file;
+
+        entries = new HashMap<InetSocketAddress, Entry>();
+        newBuckets = new ArrayList<Set<Entry>>();
+        triedBuckets = new ArrayList<Set<Entry>>();
+
+        for(int i=0; i<NEW_BUCKETS; ++i){
+            newBuckets.add(new LinkedHashSet<Entry>());
+        }
+        for(int i=0; i<TRIED_BUCKETS; ++i){
+            triedBuckets.add(new LinkedHashSet<Entry>());
+        }
+
+        load();
+    }
+
+    // a cím /16-os hálózati csoportja (IPv6 esetén az első 4 bájt) alapján a rekesz sorszáma
+    private int bucketOf(InetSocketAddress address, int buckets){
+        byte[] ip = address.getAddress().getAddress();
+        long group = ip.length == 4
+                ? ((ip[0] & 0xff) << 8) | (ip[1] & 0xff)
+                : ((long)(ip[0] & 0xff) << 24) | ((ip[1] & 0xff) << 16) | ((ip[2] & 0xff) << 8) | (ip[3] & 0xff);
+
+        long hash = (group ^ bucketKey) * 0x9E3779B97F4A7C15L;
+        return (int)((hash >>> 32) % buckets);
+    }
+
+    private Set<Entry> bucketOf(Entry entry){
+        return entry.tried
+                ? triedBuckets.get(bucketOf(entry.address, TRIED_BUCKETS))
+                : newBuckets.get(bucketOf(entry.address, NEW_BUCKETS));
+    }
+
+    /**
+     * Új cím felvétele (addr üzenetből vagy DNS szervertől). A már ismert címnek csak a legutóbbi
+     * észlelési idejét frissítjük. Ha a rekesz megtelt, a leggyengébb új címet kiszorítjuk.
+     *
+     * @param address
+     * @param lastSeen (ms)
+     */
+    public synchronized void add(InetSocketAddress address, long lastSeen){
+        Entry entry = entries.get(address);
+        if(entry != null){
+            entry.lastSeen = Math.max(entry.lastSeen, lastSeen);
+            return;
+        }
+
+        entry = new Entry(address, lastSeen);
+        Set<Entry> bucket = bucketOf(entry);
+
+        if(bucket.size() >= BUCKET_SIZE){
+            Entry worst = null;
+            for(Entry candidate: bucket){
+                if(worst == null || candidate.failures > worst.failures
+                        || (candidate.failures == worst.failures && candidate.lastSeen < worst.lastSeen)){
+                    worst = candidate;
+                }
+            }
+
+            // a leggyengébb címnél frissebbet (vagy kevesebb hibásat) fogadunk csak be
+            if(worst.failures == 0 && worst.lastSeen >= lastSeen){
+                return;
+            }
+            remove(worst);
+        }
+
+        bucket.add(entry);
+        entries.put(address, entry);
+    }
+
+    private void remove(Entry entry){
+        bucketOf(entry).remove(entry);
+        entries.remove(entry.address);
+    }
+
+    /**
+     * Kapcsolódási kísérlet a címhez.
+     *
+     * @param address
+     */
+    public synchronized void markAttempt(InetSocketAddress address){
+        Entry entry = entries.get(address);
+        if(entry != null){
+            entry.lastAttempt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Sikeres kapcsolat (kézfogás) a címmel; a cím a kipróbált címek közé kerül. Ha a kipróbált címek
+     * rekesze megtelt, a legrégebben sikeres címet visszasoroljuk az új címek közé.
+     *
+     * @param address
+     * @param latency a kapcsolat felépítésének ideje (ms)
+     */
+    public synchronized void markSuccess(InetSocketAddress address, long latency){
+        Entry entry = entries.get(address);
+        if(entry == null){
+            add(address, System.currentTimeMillis());
+            entry = entries.get(address);
+            if(entry == null){
+                return;
+            }
+        }
+
+        entry.lastSuccess = System.currentTimeMillis();
+        entry.lastSeen = entry.lastSuccess;
+        entry.failures = 0;
+        updateLatency(entry, latency);
+
+        if(entry.tried){
+            return;
+        }
+
+        bucketOf(entry).remove(entry);
+        entry.tried = true;
+        Set<Entry> bucket = bucketOf(entry);
+
+        if(bucket.size() >= BUCKET_SIZE){
+            Entry oldest = null;
+            for(Entry candidate: bucket){
+                if(oldest == null || candidate.lastSuccess < oldest.lastSuccess){
+                    oldest = candidate;
+                }
+            }
+
+            bucket.remove(oldest);
+            entries.remove(oldest.address);
+            oldest.tried = false;
+            add(oldest.address, oldest.lastSeen);
+        }
+
+        bucket.add(entry);
+    }
+
+    /**
+     * Sikertelen kapcsolódás a címhez; túl sok egymást követő hiba után a címet elfelejtjük.
+     *
+     * @param address
+     */
+    public synchronized void markFailure(InetSocketAddress address){
+        Entry entry = entries.get(address);
+        if(entry == null){
+            return;
+        }
+
+        entry.failures++;
+        if(entry.failures >= MAX_FAILURES){
+            remove(entry);
+        }
+    }
+
+    /**
+     * A csomóponttal mért válaszidő (pl. ping) rögzítése.
+     *
+     * @param address
+     * @param latency (ms)
+     */
+    public synchronized void markLatency(InetSocketAddress address, long latency){
+        Entry entry = entries.get(address);
+        if(entry != null){
+            updateLatency(entry, latency);
+        }
+    }
+
+    private static void updateLatency(Entry entry, long latency){
+        if(latency < 0){
+            return;
+        }
+        entry.latency = entry.latency < 0 ? latency : (3 * entry.latency + latency) / 4;
+    }
+
+    /**
+     * A következő kipróbálandó cím: fele-fele arányban (ha van ilyen) a kipróbált és az új címek közül
+     * véletlenszerűen választunk, a kipróbált címek közül a kisebb válaszidejűeket előnyben részesítve.
+     *
+     * @param exclude a már kapcsolódott (vagy kapcsolódó) címek
+     * @return a cím, vagy null, ha nincs kipróbálható cím
+     */
+    public synchronized InetSocketAddress select(Set<InetSocketAddress> exclude){
+        long now = System.currentTimeMillis();
+
+        List<Entry> tried = new ArrayList<Entry>();
+        List<Entry> fresh = new ArrayList<Entry>();
+
+        for(Entry entry: entries.values()){
+            if(exclude.contains(entry.address) || !entry.isRetryable(now)){
+                continue;
+            }
+            (entry.tried ? tried : fresh).add(entry);
+        }
+
+        if(tried.isEmpty() && fresh.isEmpty()){
+            return null;
+        }
+
+        if(!tried.isEmpty() && (fresh.isEmpty() || random.nextBoolean())){
+            // a kipróbált címek közül kettőt húzunk, és a kisebb válaszidejűt választjuk
+            Entry first = tried.get(random.nextInt(tried.size()));
+            Entry second = tried.get(random.nextInt(tried.size()));
+
+            if(second.latency >= 0 && (first.latency < 0 || second.latency < first.latency)){
+                return second.address;
+            }
+            return first.address;
+        }
+
+        return fresh.get(random.nextInt(fresh.size())).address;
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    public synchronized int countTried(){
+        int num = 0;
+        for(Entry entry: entries.values()){
+            if(entry.tried){
+                ++num;
+            }
+        }
+        return num;
+    }
+
+    private void load(){
+        if(!file.exists()){
+            return;
+        }
+
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(file));
+            String line;
+
+            while ((line = br.readLine()) != null){
+                String[] fields = line.trim().split(" ");
+                if(fields.length < 8){
+                    continue;
+                }
+
+                try {
+                    InetSocketAddress address = new InetSocketAddress(
+                            InetAddress.getByName(fields[0]), Integer.parseInt(fields[1]));
+
+                    add(address, Long.parseLong(fields[3]));
+                    Entry entry = entries.get(address);
+                    if(entry == null){
+                        continue;
+                    }
+
+                    entry.lastAttempt = Long.parseLong(fields[4]);
+                    entry.failures = Integer.parseInt(fields[6]);
+                    entry.latency = Long.parseLong(fields[7]);
+
+                    if(Boolean.parseBoolean(fields[2])){
+                        markSuccess(address, -1);
+                    }
+                    entry.lastSuccess = Long.parseLong(fields[5]);
+                    entry.failures = Integer.parseInt(fields[6]);
+
+                } catch (UnknownHostException e) {
+                    e.printStackTrace();
+                } catch (NumberFormatException e) {
+                    System.out.println("Hibás címjegyzék sor: " + line);
+                }
+            }
+
+            br.close();
+
+        } catch (IOException e){
+            e.printStackTrace();
+        }
+
+        System.out.println(String.format("Címjegyzék betöltve: %d cím (%d kipróbált).", size(), countTried()));
+    }
+
+    /**
+     * A címjegyzék mentése a lemezre.
+     */
+    public synchronized void save(){
+        try {
+            PrintStream fileStream = new PrintStream(file);
+
+            for(Entry entry: entries.values()){
+                fileStream.println(String.format("%s %d %b %d %d %d %d %d",
+                        entry.address.getAddress().getHostAddress(), entry.address.getPort(), entry.tried,
+                        entry.lastSeen, entry.lastAttempt, entry.lastSuccess, entry.failures, entry.latency));
+            }
+
+            fileStream.flush();
+            fileStream.close();
+
+        } catch (FileNotFoundException e){
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,47 +1,81 @@
-package de.ik.danyi.bitcoin;
-
-import org.bitcoinj.core.AbstractBlockChainListener;
-import org.bitcoinj.core.Coin;
-import org.bitcoinj.core.NetworkParameters;
-import org.bitcoinj.params.TestNet3Params;
-
-/**
- * Created by Imre Danyi on 2015.04.14..
- */
-public class App extends AbstractBlockChainListener {
-
-    // a teszt hálózat csomópontjait szeretnénk elérni
-    public static final NetworkParameters netParams = TestNet3Params.get();
-
-    public static BlockchainManager bm;
-
-    public static NodeManager nm;
-    public static AddressManager am;
-
-    public static TransactionManager tm;
-
-    public static UI ui;
-
-    // az elköltéshez szükséges megerősítések száma
-    public static int minConfirmation;
-
-    // a tranzakciós díj minimális értéke
-    public static final Coin minFee = Coin.parseCoin("0.0001");
-
-    public static void main(String[] args){
-
-        minConfirmation = 1;
-
-        ui = new UI();
-
-        bm = new BlockchainManager();
-
-        am = new AddressManager();
-        tm = new TransactionManager();
-
-        // 5 csomóponthoz szándékozunk folyamatosan kapcsolatban lenni
-        // a csomópontokhoz intézett kérésekre maximum 10 másodpercet várunk
-        nm = new NodeManager(5, 10000);
-
-    }
-}
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.AbstractBlockChainListener;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.params.TestNet3Params;
+
+import java.io.File;
+
+/**
+ * Created by Imre Danyi on 2015.04.14..
+ */
+public class App extends AbstractBlockChainListener {
+
+    // a teszt hálózat csomópontjait szeretnénk elérni
+    public static final NetworkParameters netParams = TestNet3Params.get();
+
+    // a program által tárolt adatok (pl. blokkfejek) könyvtára
+    public static final File dataDir = new File(System.getProperty("user.home"), ".bitcoin-tarcaprogram");
+
+    // a letöltött blokkfejeket tartalmazó fájl
+    public static final File headersFile = new File(dataDir, netParams.getPaymentProtocolId() + ".headers");
+
+    // a fő lánc magasság szerinti indexe (lásd BestChainIndex)
+    public static final File bestChainFile = new File(dataDir, netParams.getPaymentProtocolId() + ".bestchain");
+
+    // a letöltött blokkok tartalmát tároló gyorsítótár könyvtára
+    public static final File blocksDir = new File(dataDir, netParams.getPaymentProtocolId() + ".blocks");
+
+    // a blokkokhoz tartozó tömör szűrőket tartalmazó fájl
+    public static final File filtersFile = new File(dataDir, netParams.getPaymentProtocolId() + ".cfilters");
+
+    // a csomópontok címjegyzéke (lásd AddressBook)
+    public static final File peersFile = new File(dataDir, netParams.getPaymentProtocolId() + ".peers");
+
+    public static BlockchainManager bm;
+
+    public static NodeManager nm;
+    public static AddressManager am;
+
+    public static TransactionManager tm;
+
+    public static UI ui;
+
+    // az elköltéshez szükséges megerősítések száma
+    public static int minConfirmation;
+
+    // a tranzakciós díj minimális értéke
+    public static final Coin minFee = Coin.parseCoin("0.0001");
+
+    public static void main(String[] args){
+
+        minConfirmation = 1;
+
+        dataDir.mkdirs();
+
+        ui = new UI();
+
+        bm = new BlockchainManager();
+
+        // leállításkor a blokkfej-tárolót lezárjuk, a címjegyzéket elmentjük
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                bm.close();
+
+                if(nm != null){
+                    nm.close();
+                }
+            }
+        }, "Shutdown"));
+
+        am = new AddressManager();
+        tm = new TransactionManager();
+
+        // 5 csomóponthoz szándékozunk folyamatosan kapcsolatban lenni
+        // a csomópontokhoz intézett kérésekre maximum 10 másodpercet várunk
+        nm = new NodeManager(5, 10000, 16);
+
+    }
+}
@@ -0,0 +1,282 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.store.BlockStoreException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Az aktuális fő lánc blokkjainak hash értékeit magasság szerint tároló index. Egy adott
+ * magasságú blokk, valamint a lánc csúcsa közvetlenül (a lánc bejárása nélkül) lekérdezhető.
+ *
+ * A hash értékeket egymás után, 32 bájtonként egy memóriába leképzett fájlban tároljuk (a Java
+ * heap-en kívül); Sha256Hash objektum csak lekérdezéskor jön létre. Mivel az index a lemezen
+ * megmarad, indításkor nem kell a teljes láncot a csúcstól visszafelé bejárni: elég a tárolt index
+ * csúcsa feletti (illetve attól eltérő) blokkokat pótolni (lásd BlockchainManager.loadBestChain).
+ *
+ * A fájl formátuma: [magic (4 bájt)][startHeight (4 bájt)][height (4 bájt)][tartalék], majd a hash értékek.
+ *
+ * Ha a lánc egy ellenőrzőpontról (checkpoint) indul, az index csak az ellenőrzőpont magasságától
+ * (startHeight) tartalmaz bejegyzéseket, az alatta lévő magasságoknak nem foglalunk helyet.
+ *
+ * Láncátrendeződés esetén az elágazási pont feletti bejegyzéseket eldobjuk (truncate), majd az új
+ * ág blokkjait a megfelelő magasságokra beírjuk.
+ */
+public class BestChainIndex {
+
+    private static final int MAGIC = 0x42434958;          // "BCIX"
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private static final int HASH_SIZE = 32;
+
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    // (magasság - startHeight) -> blokk hash értéke (a leképzett fájl fejléc utáni része)
+    private ByteBuffer hashes;
+    private int capacity;
+
+    // a legalacsonyabb magasság, amelynek az index helyet foglal
+    private int startHeight;
+
+    // a fő lánc csúcsának magassága (-1, ha az index üres)
+    private int height;
+
+    /**
+     * Az index megnyitása; ha a fájl még nem létezik, vagy a formátuma nem megfelelő, üres indexszel indulunk.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public BestChainIndex(File file) throws IOException {
+        boolean exists = file.exists() && file.length() >= HEADER_SIZE + HASH_SIZE;
+
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+
+        if(exists){
+            map((int)((channel.size() - HEADER_SIZE) / HASH_SIZE));
+        }
+
+        if(exists && buffer.getInt(0) == MAGIC){
+            startHeight = buffer.getInt(4);
+            height = buffer.getInt(8);
+
+            if(height >= startHeight + capacity){
+                height = -1;
+            }
+        }else{
+            map(INITIAL_CAPACITY);
+            buffer.putInt(0, MAGIC);
+            startHeight = 0;
+            height = -1;
+            writeHeader();
+        }
+    }
+
+    // a régi leképzést az új létrejötte után azonnal megszüntetjük (minden hozzáférés zárolás mellett történik)
+    private void map(int newCapacity) throws IOException {
+        MappedByteBuffer oldBuffer = buffer;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)newCapacity * HASH_SIZE);
+        capacity = newCapacity;
+
+        if(oldBuffer != null){
+            Utils.unmap(oldBuffer);
+        }
+
+        ByteBuffer data = buffer.duplicate();
+        data.position(HEADER_SIZE);
+        hashes = data.slice();
+    }
+
+    private void writeHeader(){
+        buffer.putInt(4, startHeight);
+        buffer.putInt(8, height);
+    }
+
+    /**
+     * Az adott magasságra beírja a blokk hash értékét. Ha a magasság a jelenlegi csúcs feletti,
+     * az index csúcsa is ide kerül.
+     *
+     * @param blockHeight
+     * @param blockHash
+     * @throws BlockStoreException ha az index bővítése nem sikerült; ekkor az index nem változik
+     */
+    public synchronized void put(int blockHeight, Sha256Hash blockHash) throws BlockStoreException {
+        try {
+            if(height != -1 && blockHeight < startHeight){
+                growDown(blockHeight);
+            }
+
+            int newStartHeight = height == -1 ? blockHeight : startHeight;
+            if(blockHeight - newStartHeight >= capacity){
+                map(Math.max(capacity * 2, blockHeight - newStartHeight + 1));
+            }
+
+            startHeight = newStartHeight;
+        } catch (IOException e) {
+            throw new BlockStoreException(e);
+        }
+
+        // a csúcs és az új bejegyzés közötti (még ismeretlen) magasságokat nullázzuk
+        for(int i = Math.max(height + 1, startHeight); i < blockHeight; ++i){
+            clear(i);
+        }
+
+        ByteBuffer slot = hashes.duplicate();
+        slot.position(offset(blockHeight));
+        slot.put(blockHash.getBytes());
+
+        if(blockHeight > height){
+            height = blockHeight;
+        }
+        writeHeader();
+    }
+
+    /**
+     * Az adott magasság feletti bejegyzéseket eltávolítja; a lánc csúcsa a megadott magasság lesz.
+     *
+     * @param blockHeight
+     */
+    public synchronized void truncate(int blockHeight){
+        for(int i = Math.max(blockHeight + 1, startHeight); i <= height; ++i){
+            clear(i);
+        }
+
+        if(blockHeight < startHeight){
+            height = -1;
+        }
+        else if(blockHeight < height){
+            height = blockHeight;
+        }
+        writeHeader();
+    }
+
+    /**
+     * A fő lánc adott magasságú blokkjának hash értéke, vagy null, ha ilyen nincs.
+     *
+     * @param blockHeight
+     * @return
+     */
+    public synchronized Sha256Hash get(int blockHeight){
+        if(blockHeight < startHeight || blockHeight > height || isEmpty(blockHeight)){
+            return null;
+        }
+
+        byte[] hashBytes = new byte[HASH_SIZE];
+        ByteBuffer slot = hashes.duplicate();
+        slot.position(offset(blockHeight));
+        slot.get(hashBytes);
+
+        return new Sha256Hash(hashBytes);
+    }
+
+    /**
+     * Az adott magasságon a megadott blokk áll-e a fő láncban.
+     *
+     * @param blockHeight
+     * @param blockHash
+     * @return
+     */
+    public synchronized boolean contains(int blockHeight, Sha256Hash blockHash){
+        if(blockHeight < startHeight || blockHeight > height){
+            return false;
+        }
+
+        byte[] hashBytes = blockHash.getBytes();
+        int offset = offset(blockHeight);
+
+        for(int i=0; i<HASH_SIZE; ++i){
+            if(hashes.get(offset + i) != hashBytes[i]){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public synchronized int getHeight(){
+        return height;
+    }
+
+    /**
+     * A legalacsonyabb bejegyzés magassága, vagy -1, ha az index üres.
+     *
+     * @return
+     */
+    public synchronized int getStartHeight(){
+        return height == -1 ? -1 : startHeight;
+    }
+
+    /**
+     * Az index lemezre írása és lezárása (a program leállításakor).
+     */
+    public synchronized void close(){
+        try {
+            buffer.force();
+            Utils.unmap(buffer);
+            channel.close();
+            randomAccessFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private int offset(int blockHeight){
+        return (blockHeight - startHeight) * HASH_SIZE;
+    }
+
+    // a tárolót lefelé bővítjük, ha a lánc csúcsától visszafelé haladva töltjük fel az indexet;
+    // a meglévő bejegyzéseket a fájlban feljebb toljuk
+    private void growDown(int blockHeight) throws IOException {
+        int newStartHeight = Math.max(0, Math.min(blockHeight, startHeight - capacity));
+        int shift = startHeight - newStartHeight;
+        int used = height - startHeight + 1;
+
+        byte[] oldHashes = new byte[used * HASH_SIZE];
+        ByteBuffer old = hashes.duplicate();
+        old.position(0);
+        old.get(oldHashes);
+
+        map(Math.max(capacity, used + shift));
+
+        ByteBuffer moved = hashes.duplicate();
+        moved.position(shift * HASH_SIZE);
+        moved.put(oldHashes);
+
+        startHeight = newStartHeight;
+        for(int i = startHeight; i < startHeight + shift; ++i){
+            clear(i);
+        }
+    }
+
+    private void clear(int blockHeight){
+        int offset = offset(blockHeight);
+
+        for(int i=0; i<HASH_SIZE; ++i){
+            hashes.put(offset + i, (byte)0);
+        }
+    }
+
+    // egy nem ismert magasságú bejegyzés csupa nulla bájtból áll
+    private boolean isEmpty(int blockHeight){
+        int offset = offset(blockHeight);
+
+        for(int i=0; i<HASH_SIZE; ++i){
+            if(hashes.get(offset + i) != 0){
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,371 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A csomópontoktól letöltött blokkok tartalmát tároló kétszintű gyorsítótár. A blokkok letöltése
+ * a program legnagyobb sávszélesség- és időigényű művelete, ezért egy már letöltött blokkot
+ * (láncátrendeződés, újraindítás vagy egy újabb cím vizsgálata esetén) nem kérünk le újból.
+ *
+ * Egy blokkból a számunkra ismert tranzakciókat tároljuk (lásd BlockTransactions). Szűrt blokk esetén
+ * ezek csak az akkori Bloom-szűrőnknek megfelelő tranzakciók, ezért a bejegyzéshez a szűrő azonosítóját
+ * (tag) is eltároljuk; a bejegyzés csak ugyanazon szűrő esetén használható fel. Teljes blokk
+ * (FULL_BLOCK) bármely szűrő esetén felhasználható.
+ *
+ * 1. szint: a legutóbb használt blokkok szerializált alakja a memóriában (LRU), a teljes méretük korlátos.
+ * 2. szint: a lemezen, csak hozzáfűzéssel írt szegmensfájlok:
+ *
+ * [hash (32 bájt)][szűrő azonosító (8 bájt)][hossz (4 bájt)][tranzakciók száma (4 bájt)]([hossz][tranzakció])*
+ *
+ * A lemezen tárolt blokkok helyét (szegmens, pozíció, hossz) egy indexben tartjuk nyilván, amelyet
+ * megnyitáskor a szegmensfájlok végigolvasásával építünk fel; a félbeszakadt utolsó rekordot eldobjuk.
+ *
+ * A szegmensfájlok összmérete korlátos (alapértelmezés szerint MAX_DISK_BYTES): ha egy új szegmens miatt a korlátot túllépnénk,
+ * a legrégebbi szegmenst töröljük, és a benne tárolt blokkokat az indexből is eltávolítjuk.
+ */
+public class BlockCache {
+
+    // a memóriában tartott blokkok összmérete legfeljebb
+    private static final long MAX_MEMORY_BYTES = 32L * 1024 * 1024;
+
+    // egy szegmensfájl legfeljebb ekkora lehet, utána újat kezdünk
+    private static final long MAX_SEGMENT_BYTES = 128L * 1024 * 1024;
+
+    // a szegmensfájlok összmérete legfeljebb
+    private static final long MAX_DISK_BYTES = 1024L * 1024 * 1024;
+
+    private static final int RECORD_HEADER_SIZE = 32 + 8 + 4;
+
+    // a teljes blokk tranzakcióit tartalmazó bejegyzés azonosítója
+    public static final long FULL_BLOCK = 0;
+
+    /**
+     * Egy lemezen tárolt blokk helye.
+     */
+    private static class Location {
+        private final int segment;
+        private final long offset;
+        private final int length;
+        private final long tag;
+
+        private Location(int segment, long offset, int length, long tag){
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.tag = tag;
+        }
+    }
+
+    /**
+     * Egy memóriában tartott blokk szerializált tranzakciói.
+     */
+    private static class Entry {
+        private final long tag;
+        private final byte[] bytes;
+
+        private Entry(long tag, byte[] bytes){
+            this.tag = tag;
+            this.bytes = bytes;
+        }
+    }
+
+    private final NetworkParameters params;
+    private final File directory;
+    private final long maxSegmentBytes;
+    private final long maxDiskBytes;
+
+    // hash -> szerializált blokk, a legrégebben használt elöl
+    private final LinkedHashMap<Sha256Hash, Entry> memory;
+    private long memoryBytes;
+
+    private final Map<Sha256Hash, Location> index;
+
+    // szegmens sorszáma -> szegmensfájl, a legrégebbi elöl
+    private final TreeMap<Integer, RandomAccessFile> segments;
+    private long diskBytes;
+
+    public BlockCache(NetworkParameters params, File directory) throws IOException {
+        this(params, directory, MAX_SEGMENT_BYTES, MAX_DISK_BYTES);
+    }
+
+    // a korlátok a tesztekhez megadhatók
+    BlockCache(NetworkParameters params, File directory, long maxSegmentBytes, long maxDiskBytes) throws IOException {
+        this.params = params;
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxDiskBytes = maxDiskBytes;
+
+        memory = new LinkedHashMap<Sha256Hash, Entry>(16, 0.75f, true);
+        memoryBytes = 0;
+
+        index = new HashMap<Sha256Hash, Location>();
+        segments = new TreeMap<Integer, RandomAccessFile>();
+        diskBytes = 0;
+
+        directory.mkdirs();
+        load();
+    }
+
+    private File segmentFile(int segment){
+        return new File(directory, String.format("blk%05d.dat", segment));
+    }
+
+    // a könyvtárban lévő szegmensfájlok sorszámai növekvő sorrendben
+    private List<Integer> existingSegments(){
+        List<Integer> numbers = new ArrayList<Integer>();
+        String[] names = directory.list();
+
+        if(names != null){
+            for(String name: names){
+                if(name.matches("blk\\d{5}\\.dat")){
+                    numbers.add(Integer.parseInt(name.substring(3, 8)));
+                }
+            }
+        }
+
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * A meglévő szegmensfájlok végigolvasása és az index felépítése.
+     */
+    private void load() throws IOException {
+        for(int segment: existingSegments()){
+            RandomAccessFile file = new RandomAccessFile(segmentFile(segment), "rw");
+            segments.put(segment, file);
+
+            long offset = 0;
+            long length = file.length();
+            byte[] hashBytes = new byte[32];
+
+            while (offset + RECORD_HEADER_SIZE <= length){
+                file.seek(offset);
+                file.readFully(hashBytes);
+                long tag = file.readLong();
+                int blockLength = file.readInt();
+
+                if(blockLength <= 0 || offset + RECORD_HEADER_SIZE + blockLength > length){
+                    break;
+                }
+
+                // ugyanazon blokk későbbi bejegyzése felülírja a korábbit
+                index.put(new Sha256Hash(hashBytes.clone()), new Location(segment, offset, blockLength, tag));
+                offset += RECORD_HEADER_SIZE + blockLength;
+            }
+
+            // a program leállásakor félbeszakadt rekordot eldobjuk
+            if(offset < length){
+                System.out.println(String.format("Sérült blokk-gyorsítótár rekord levágva: %s (%d)",
+                        segmentFile(segment), offset));
+                file.setLength(offset);
+            }
+
+            diskBytes += file.length();
+        }
+
+        System.out.println(String.format("Blokk-gyorsítótár betöltve: %d blokk.", index.size()));
+    }
+
+    private static boolean isUsable(long entryTag, long filterTag){
+        return entryTag == FULL_BLOCK || entryTag == filterTag;
+    }
+
+    /**
+     * A letöltött blokk tranzakcióit a gyorsítótárba és a lemezre írjuk.
+     *
+     * @param block
+     * @param tag a blokk szűréséhez használt Bloom-szűrő azonosítója, vagy FULL_BLOCK
+     */
+    public synchronized void put(BlockTransactions block, long tag){
+        Sha256Hash blockHash = block.getBlockHash();
+
+        Location existing = index.get(blockHash);
+        if(existing != null && isUsable(existing.tag, tag)){
+            return;
+        }
+
+        byte[] blockBytes;
+        try {
+            blockBytes = serialize(block);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            int segment = segments.isEmpty() ? -1 : segments.lastKey();
+            if(segment == -1 || segments.get(segment).length() + RECORD_HEADER_SIZE + blockBytes.length > maxSegmentBytes){
+                segment++;
+                segments.put(segment, new RandomAccessFile(segmentFile(segment), "rw"));
+            }
+
+            RandomAccessFile file = segments.get(segment);
+            long offset = file.length();
+
+            file.seek(offset);
+            file.write(blockHash.getBytes());
+            file.writeLong(tag);
+            file.writeInt(blockBytes.length);
+            file.write(blockBytes);
+
+            index.put(blockHash, new Location(segment, offset, blockBytes.length, tag));
+            diskBytes += RECORD_HEADER_SIZE + blockBytes.length;
+
+            // a korlát túllépésekor a legrégebbi szegmenseket töröljük (az épp írtat nem)
+            while (diskBytes > maxDiskBytes && segments.firstKey() != segment){
+                evictSegment(segments.firstKey());
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        putMemory(blockHash, new Entry(tag, blockBytes));
+    }
+
+    /**
+     * A blokk tranzakciói a gyorsítótárból, vagy null, ha a blokkot az adott szűrővel még nem töltöttük le.
+     *
+     * @param blockHash
+     * @param tag az aktuális Bloom-szűrő azonosítója
+     * @return
+     */
+    public synchronized BlockTransactions get(Sha256Hash blockHash, long tag){
+        Entry entry = memory.get(blockHash);
+
+        if(entry == null || !isUsable(entry.tag, tag)){
+            Location location = index.get(blockHash);
+            if(location == null || !isUsable(location.tag, tag)){
+                return null;
+            }
+
+            byte[] blockBytes = new byte[location.length];
+
+            try {
+                RandomAccessFile file = segments.get(location.segment);
+                if(file == null){
+                    return null;
+                }
+
+                file.seek(location.offset + RECORD_HEADER_SIZE);
+                file.readFully(blockBytes);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+
+            entry = new Entry(location.tag, blockBytes);
+            putMemory(blockHash, entry);
+        }
+
+        try {
+            return deserialize(blockHash, entry.bytes);
+        } catch (ProtocolException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * A szegmensfájl törlése; a benne tárolt blokkokat az indexből is eltávolítjuk.
+     *
+     * @param segment
+     * @throws IOException
+     */
+    private void evictSegment(int segment) throws IOException {
+        RandomAccessFile file = segments.remove(segment);
+        diskBytes -= file.length();
+        file.close();
+
+        Iterator<Location> iterator = index.values().iterator();
+        while (iterator.hasNext()){
+            if(iterator.next().segment == segment){
+                iterator.remove();
+            }
+        }
+
+        if(!segmentFile(segment).delete()){
+            System.out.println(String.format("A blokk-gyorsítótár szegmense nem törölhető: %s", segmentFile(segment)));
+        }
+
+        System.out.println(String.format("Blokk-gyorsítótár: %s szegmens törölve, %d blokk maradt.",
+                segmentFile(segment).getName(), index.size()));
+    }
+
+    // a lemezen tárolt blokkok száma
+    public synchronized int size(){
+        return index.size();
+    }
+
+    private static byte[] serialize(BlockTransactions block) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(block.getTransactions().size());
+        for(Transaction transaction: block.getTransactions()){
+            byte[] txBytes = transaction.bitcoinSerialize();
+            out.writeInt(txBytes.length);
+            out.write(txBytes);
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private BlockTransactions deserialize(Sha256Hash blockHash, byte[] blockBytes) throws ProtocolException {
+        ByteBuffer buffer = ByteBuffer.wrap(blockBytes);
+
+        int count = buffer.getInt();
+        List<Transaction> transactions = new ArrayList<Transaction>(count);
+
+        for(int i=0; i<count; ++i){
+            byte[] txBytes = new byte[buffer.getInt()];
+            buffer.get(txBytes);
+            transactions.add(new Transaction(params, txBytes));
+        }
+
+        return new BlockTransactions(blockHash, transactions);
+    }
+
+    // a memóriában lévő blokkok összmérete nem lépheti túl a korlátot
+    private void putMemory(Sha256Hash blockHash, Entry entry){
+        Entry previous = memory.put(blockHash, entry);
+
+        memoryBytes += entry.bytes.length;
+        if(previous != null){
+            memoryBytes -= previous.bytes.length;
+        }
+
+        Iterator<Map.Entry<Sha256Hash, Entry>> iterator = memory.entrySet().iterator();
+        while (memoryBytes > MAX_MEMORY_BYTES && iterator.hasNext()){
+            Map.Entry<Sha256Hash, Entry> eldest = iterator.next();
+
+            // az épp beírt blokkot nem dobjuk el
+            if(eldest.getKey().equals(blockHash)){
+                continue;
+            }
+
+            memoryBytes -= eldest.getValue().bytes.length;
+            iterator.remove();
+        }
+    }
+
+    public synchronized void close(){
+        for(RandomAccessFile file: segments.values()){
+            try {
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
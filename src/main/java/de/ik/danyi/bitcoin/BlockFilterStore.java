@@ -0,0 +1,234 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+/**
+ * A blokkokhoz tartozó tömör (BIP158 jellegű, Golomb-Rice kódolt) szűrőket tároló osztály. A szűrő
+ * alapján a blokk letöltése nélkül eldönthető, hogy a blokk tartalmazhat-e számunkra releváns tranzakciót.
+ *
+ * A szűrő elemei a BIP158 "basic" szűrője szerint:
+ * - a blokk tranzakcióinak kimeneteihez tartozó zároló szkriptek (scriptPubKey), az üres és az
+ *   OP_RETURN kimenetek kivételével,
+ * - a bemenetek által elköltött kimenetek zároló szkriptjei (prevout script).
+ *
+ * A szűrő így csak zároló szkripteket tartalmaz: egy blokk akkor releváns számunkra, ha valamely
+ * címünk szkriptje szerepel benne (kimenetként kaptunk, vagy bemenetként elköltöttük a kimenetünket).
+ * Az elköltött kimenetek szkriptjét a blokk korábbi tranzakcióiból, illetve a tárcánk tranzakcióiból
+ * határozzuk meg; más (számunkra közömbös) kimenetek elköltése a szűrőbe nem kerül be, ez a
+ * címeink vizsgálatát nem befolyásolja.
+ *
+ * A szűrőket a teljes blokkok tartalmából állítjuk el (BIP37 használatakor a csomópontok csak szűrt
+ * blokkot küldenek, így szűrő csak a teljesen letöltött blokkokhoz készül). A szűrők a blokk-gyorsítótár
+ * korlátja miatt törölt blokkokhoz is megmaradnak, így ezeket csak akkor kell újból letölteni, ha
+ * számunkra releváns tranzakciót tartalmazhatnak. A BIP157 szerinti lekérést (getcfilters) a bitcoinj
+ * 0.12.3 nem támogatja.
+ *
+ * Az elköltött kimenetek szkriptjei csak a szűrő készítésekor ismert tárca-tranzakciókból határozhatók
+ * meg. Korábban létrehozott kulcs importálásakor a kulcs kimeneteinek elköltését a meglévő szűrők nem
+ * tartalmazhatják, ezért ekkor a szűrőket töröljük (lásd clear), és a blokkokat újból megvizsgáljuk.
+ *
+ * A szűrőket a blokkfej-tároló mellett egy csak hozzáfűzéssel írt fájlban tároljuk:
+ * [hash (32 bájt)][hossz (4 bájt)][szűrő]. Megnyitáskor az indexet a fájlból építjük fel.
+ */
+public class BlockFilterStore {
+
+    private static final int RECORD_HEADER_SIZE = 32 + 4;
+
+    private final RandomAccessFile file;
+
+    // blokk hash -> a szűrő pozíciója a fájlban
+    private final Map<Sha256Hash, Long> index;
+
+    public BlockFilterStore(File filtersFile) throws IOException {
+        file = new RandomAccessFile(filtersFile, "rw");
+        index = new HashMap<Sha256Hash, Long>();
+
+        load();
+    }
+
+    private void load() throws IOException {
+        long offset = 0;
+        long length = file.length();
+        byte[] hashBytes = new byte[32];
+
+        while (offset + RECORD_HEADER_SIZE <= length){
+            file.seek(offset);
+            file.readFully(hashBytes);
+            int filterLength = file.readInt();
+
+            if(filterLength <= 0 || offset + RECORD_HEADER_SIZE + filterLength > length){
+                break;
+            }
+
+            index.put(new Sha256Hash(hashBytes.clone()), offset);
+            offset += RECORD_HEADER_SIZE + filterLength;
+        }
+
+        // a program leállásakor félbeszakadt rekordot eldobjuk
+        if(offset < length){
+            file.setLength(offset);
+        }
+
+        System.out.println(String.format("Blokkszűrők betöltve: %d blokk.", index.size()));
+    }
+
+    public synchronized boolean contains(Sha256Hash blockHash){
+        return index.containsKey(blockHash);
+    }
+
+    /**
+     * A teljes blokk tranzakcióiból előállítja és eltárolja a blokk szűrőjét.
+     *
+     * @param block
+     * @param walletTxs a tárcánk tranzakciói (az elköltött kimenetek szkriptjeinek meghatározásához)
+     */
+    public synchronized void put(BlockTransactions block, Map<Sha256Hash, Transaction> walletTxs){
+        Sha256Hash blockHash = block.getBlockHash();
+
+        if(index.containsKey(blockHash)){
+            return;
+        }
+
+        byte[] filter = GolombCodedSet.build(blockHash, getElements(block.getTransactions(), walletTxs));
+
+        try {
+            long offset = file.length();
+
+            file.seek(offset);
+            file.write(blockHash.getBytes());
+            file.writeInt(filter.length);
+            file.write(filter);
+
+            index.put(blockHash, offset);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A blokk szűrője, vagy null, ha ilyen nincs.
+     *
+     * @param blockHash
+     * @return
+     */
+    public synchronized byte[] get(Sha256Hash blockHash){
+        Long offset = index.get(blockHash);
+
+        if(offset == null){
+            return null;
+        }
+
+        try {
+            file.seek(offset + 32);
+            byte[] filter = new byte[file.readInt()];
+            file.readFully(filter);
+            return filter;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * A blokk tartalmazhat-e a keresett elemek közül legalább egyet. Ha a blokkhoz nincs szűrő,
+     * a blokkot relevánsnak tekintjük.
+     *
+     * @param blockHash
+     * @param walletElements a címeink zároló szkriptjei
+     * @return
+     */
+    public boolean mayContain(Sha256Hash blockHash, Collection<byte[]> walletElements){
+        byte[] filter = get(blockHash);
+
+        if(filter == null){
+            return true;
+        }
+
+        return GolombCodedSet.matchAny(blockHash, filter, walletElements);
+    }
+
+    /**
+     * A tranzakciók szűrőbe kerülő elemei: a kimenetek, valamint az ismert elköltött kimenetek zároló szkriptjei.
+     *
+     * @param transactions
+     * @param walletTxs a tárcánk tranzakciói hash szerint
+     * @return
+     */
+    public static List<byte[]> getElements(List<Transaction> transactions, Map<Sha256Hash, Transaction> walletTxs){
+        List<byte[]> elements = new ArrayList<byte[]>();
+
+        // a blokkon belül elköltött kimenetek a blokk korábbi tranzakcióiból ismertek
+        Map<Sha256Hash, Transaction> blockTxs = new HashMap<Sha256Hash, Transaction>();
+
+        for(Transaction transaction: transactions){
+            if(!transaction.isCoinBase()){
+                for(TransactionInput input: transaction.getInputs()){
+                    byte[] prevScript = getPrevOutScript(input.getOutpoint(), blockTxs, walletTxs);
+
+                    if(prevScript != null){
+                        elements.add(prevScript);
+                    }
+                }
+            }
+
+            for(TransactionOutput output: transaction.getOutputs()){
+                byte[] script = output.getScriptBytes();
+
+                // az üres és az OP_RETURN kezdetű kimeneteket nem vesszük fel
+                if(script.length > 0 && (script[0] & 0xff) != 0x6a){
+                    elements.add(script);
+                }
+            }
+
+            blockTxs.put(transaction.getHash(), transaction);
+        }
+
+        return elements;
+    }
+
+    // az elköltött kimenet zároló szkriptje, vagy null, ha az elköltött tranzakció nem ismert
+    private static byte[] getPrevOutScript(TransactionOutPoint outPoint, Map<Sha256Hash, Transaction> blockTxs,
+                                           Map<Sha256Hash, Transaction> walletTxs){
+        Transaction prevTx = blockTxs.get(outPoint.getHash());
+
+        if(prevTx == null){
+            prevTx = walletTxs.get(outPoint.getHash());
+        }
+
+        if(prevTx == null || outPoint.getIndex() >= prevTx.getOutputs().size()){
+            return null;
+        }
+
+        byte[] script = prevTx.getOutput((int)outPoint.getIndex()).getScriptBytes();
+        return script.length > 0 ? script : null;
+    }
+
+    /**
+     * Az összes tárolt szűrő törlése; a szűrő nélküli blokkokat relevánsnak tekintjük.
+     */
+    public synchronized void clear(){
+        try {
+            file.setLength(0);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        index.clear();
+        System.out.println("A blokkszűrőket töröltük.");
+    }
+
+    public synchronized void close(){
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
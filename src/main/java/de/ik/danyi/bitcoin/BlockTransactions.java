@@ -0,0 +1,81 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.FilteredBlock;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Egy blokk azonosítója és a belőle számunkra ismert tranzakciók. Teljes blokk esetén ez a blokk összes
+ * tranzakciója, szűrt blokk (merkleblock) esetén csak a Bloom-szűrőnknek megfelelő tranzakciók, amelyek
+ * blokkba foglalását a részleges Merkle-fa igazolja.
+ *
+ * A csomópont a szűrt blokk után csak azokat a tranzakciókat küldi el újból, amelyeket korábban még nem
+ * küldött nekünk; a korábban (pl. még megerősítés nélkül) megkapott tranzakciókat a tárcánkból pótoljuk.
+ */
+public class BlockTransactions {
+
+    private final Sha256Hash blockHash;
+    private final List<Transaction> transactions;
+
+    public BlockTransactions(Sha256Hash blockHash, List<Transaction> transactions){
+        this.blockHash = blockHash;
+        this.transactions = transactions;
+    }
+
+    public BlockTransactions(Block block){
+        this(block.getHash(), block.getTransactions());
+    }
+
+    /**
+     * A szűrt blokk tranzakciói a részleges Merkle-fa által igazolt hash értékek sorrendjében: a csomópont
+     * által elküldött tranzakciók, illetve a tárcánkban már meglévők.
+     *
+     * @param filteredBlock
+     * @param walletTxs a tárcánk tranzakciói hash szerint (lásd TransactionManager.getWalletTransactions)
+     */
+    public BlockTransactions(FilteredBlock filteredBlock, Map<Sha256Hash, Transaction> walletTxs){
+        this(filteredBlock.getHash(), new ArrayList<Transaction>());
+
+        Map<Sha256Hash, Transaction> associated = filteredBlock.getAssociatedTransactions();
+        for(Sha256Hash txHash: filteredBlock.getTransactionHashes()){
+            Transaction transaction = associated.get(txHash);
+
+            if(transaction == null){
+                transaction = walletTxs.get(txHash);
+            }
+
+            if(transaction != null){
+                transactions.add(transaction);
+            }
+        }
+    }
+
+    public Sha256Hash getBlockHash(){
+        return blockHash;
+    }
+
+    public List<Transaction> getTransactions(){
+        return transactions;
+    }
+
+    /**
+     * A blokkba foglalt tranzakciók közül a keresett, vagy null, ha az nem része a blokknak.
+     *
+     * @param txHash
+     * @return
+     */
+    public Transaction getTransaction(Sha256Hash txHash){
+        for(Transaction transaction: transactions){
+            if(transaction.getHash().equals(txHash)){
+                return transaction;
+            }
+        }
+
+        return null;
+    }
+}
@@ -1,377 +1,791 @@
-package de.ik.danyi.bitcoin;
-
-import org.bitcoinj.core.*;
-import org.bitcoinj.store.BlockStore;
-import org.bitcoinj.store.BlockStoreException;
-import org.bitcoinj.store.MemoryBlockStore;
-
-import java.util.*;
-
-/**
- * A blokklánc karbantartását végző osztály. A program indításakor először a hiányzó blokkfejeket
- * kérjük le, ezek meghatározását ez az osztály végzi, valamint az időközben inkonzisztenssé vált
- * lánc hiányzó elemeit azonosítja.
- *
- * A letöltött blokkfejeket a program a memóriában tárolja, ugyanakkor a Bitcoinj könyvtár által
- * alkalmazott MemoryBlockStore csak az utolsó 5000 blokkfejet tartalmazza*. A teljes blokkfej-láncot
- * ezért egy saját tárolóban (bestHeaders) tartjuk nyilván.
- *
- * * "Make MemoryBlockStore store only a rolling window of the last 5000 blocks. Fixes
- * BuildCheckpoints which was trying to store every block header and running out of
- * heap space."
- *
- * Created by Imre Danyi on 2015.04.15..
- */
-public class BlockchainManager {
-
-    public BlockStore spvBlockStore;
-    public BlockChain blockChain;
-
-    // az aktuális fő lánc összes blokkfejét tartalmazza
-    public Map<Sha256Hash, StoredBlock> bestHeaders;
-    private StoredBlock lastBestHeader = null;
-
-    // várunk-e valamelyik csomópontra a blokkfejlécek letöltése miatt
-    private boolean pending = false;
-
-    private boolean chainIsSynced = false;
-
-    // azon blokkok hash értékei, amelyek tartalmát még nem kértük le
-    public Utils.QueryQueue blockHashes;
-
-    public BlockchainManager() {
-
-        blockHashes = new Utils.QueryQueue();
-
-        bestHeaders = new HashMap<Sha256Hash, StoredBlock>();
-        Block genesisBlock = App.netParams.getGenesisBlock();
-        bestHeaders.put(
-                genesisBlock.getHash(),
-                new StoredBlock(genesisBlock.cloneAsHeader(), genesisBlock.getWork(), 0));
-
-        try {
-
-            spvBlockStore = new MemoryBlockStore(App.netParams);
-            blockChain = new BlockChain(App.netParams, spvBlockStore);
-
-            blockChain.addListener(new BlockChainListener() {
-
-                // minden új blokk hozzáadásakor meghívódik
-                public void notifyNewBestBlock(StoredBlock storedBlock) throws VerificationException {
-
-                    Sha256Hash blockHash = storedBlock.getHeader().getHash();
-
-                    // az újonnan beépült blokkfejet hozzáadjuk az összes fejlécet tartalmazó bestHeaders-höz is
-                    if(bestHeaders.get(blockHash) == null) {
-                        bestHeaders.put(blockHash, storedBlock);
-                        lastBestHeader = storedBlock;
-
-                    }
-                }
-
-                public void reorganize(StoredBlock splitPoint, List<StoredBlock> oldBlocks, List<StoredBlock> newBlocks)
-                        throws VerificationException {
-
-                    // a splitPoint blokk megkeresése (amely blokktól az elágazás történt)
-                    if(!bestHeaders.containsKey(getBlockHash(splitPoint))
-                            || !bestHeaders.values().containsAll(oldBlocks)){
-                        System.out.println("HIBA! A blokkláncunk hiányos!");
-                        return;
-                    }
-
-                    StoredBlock currentBlock = lastBestHeader;
-                    int removed = 0;
-                    while (!getBlockHash(currentBlock).equals(getBlockHash(splitPoint))){
-
-                        // az új elágazást alkotó blokkfej eltávolítása
-                        bestHeaders.remove(getBlockHash(currentBlock));
-                        removed++;
-
-                        currentBlock = bestHeaders.get(getPrevBlockHash(currentBlock));
-                    }
-
-                    if(removed != oldBlocks.size()){
-                        System.out.println("HIBA! A BestHeaders nincs szinkronban a blokklánccal.");
-                        return;
-                    }
-
-                    // új blokkfejek beépítése
-                    for(StoredBlock newBlock: newBlocks){
-                        bestHeaders.put(getBlockHash(newBlock), newBlock);
-                        lastBestHeader = newBlock;
-                    }
-
-                    // a láncátrendeződés miatt a megváltozott blokkokat (az új és a régieket egyaránt)
-                    // újból le kell kérnünk, hogy a releváns kimenetek megerősítéseit (beágyazottságát)
-                    // megfelelően frissíthessük
-                    for(StoredBlock storedBlock: oldBlocks){
-                        addBlockHash(getBlockHash(storedBlock));
-                    }
-
-                    for (StoredBlock storedBlock: newBlocks){
-                        addBlockHash(getBlockHash(storedBlock));
-                    }
-                }
-
-                // nem használjuk
-                @Override
-                public boolean isTransactionRelevant(Transaction transaction) throws ScriptException {
-                    return false;
-                }
-
-                // nem használjuk
-                @Override
-                public void receiveFromBlock(Transaction transaction, StoredBlock storedBlock, AbstractBlockChain.NewBlockType newBlockType, int i) throws VerificationException {
-
-                }
-
-                // nem használjuk
-                @Override
-                public boolean notifyTransactionIsInBlock(Sha256Hash sha256Hash, StoredBlock storedBlock, AbstractBlockChain.NewBlockType newBlockType, int i) throws VerificationException {
-                    return false;
-                }
-            });
-
-        } catch (BlockStoreException e) {
-            e.printStackTrace();
-        }
-    }
-
-    public Sha256Hash getBlockHash(StoredBlock storedBlock){
-        return storedBlock.getHeader().getHash();
-    }
-
-    private Sha256Hash getPrevBlockHash(StoredBlock storedBlock){
-        return storedBlock.getHeader().getPrevBlockHash();
-    }
-
-    public void chainIsSynced(){
-        chainIsSynced = true;
-    }
-
-    public void chainIsNotSynced(){
-        chainIsSynced = false;
-    }
-
-    public boolean isChainSynced(){
-        return chainIsSynced;
-    }
-
-    public boolean addBlockHash(Sha256Hash blockHash){
-        boolean isAdded =  blockHashes.addHash(blockHash);
-        if(isAdded){
-            System.out.println("Új block: " + blockHash + ", hozzáadva: " + isAdded);
-        }
-
-        return isAdded;
-    }
-
-    /**
-     * A hiányzó blokkfejek letöltése éppen folyamatban van-e. A következő "adag*"
-     * blokkfejet csak az előtte meglévők ismeretében tudjuk meghatározni (lásd getLocator függvény),
-     * ezért a blokkfejek lekérését az előzőek beérkezéséig blokkolni kell.
-     *
-     * *Egy üzenetben ez maximum 2000 blokkfej lehet.
-     *
-     * @return
-     */
-    public boolean isPending(){
-        return pending;
-    }
-
-    public void setPending(boolean b){
-        pending = b;
-    }
-
-    /**
-     * A beérkező lekért blokkot hozzáadjuk a blokklánchoz.
-     *
-     * @param block
-     * @return
-     */
-    public boolean addBlock(Block block){
-
-        boolean success = false;
-
-        try {
-            success = blockChain.add(block);
-        } catch (PrunedException e) {
-            e.printStackTrace();
-        }
-
-        return success;
-    }
-
-    /**
-     * A blokk benne van-e a fő láncban.
-     * Mivel a BestHeaders mindig az aktuális fő láncot képezi,
-     * elegendő a blokk meglétét abban vizsgálni.
-     *
-     * @param blockHash
-     * @return
-     */
-    public boolean isBlockInBestChain(Sha256Hash blockHash){
-
-        if(bestHeaders.containsKey(blockHash)){
-            return true;
-        }else{
-            return false;
-        }
-
-    }
-
-    /**
-     * Egy adott blokk beágyazottságát kérdezi le.
-     * @param blockHash
-     * @return
-     */
-    public int getDeepInfo(Sha256Hash blockHash){
-        int deep = -1;
-
-        if(isBlockInBestChain(blockHash)){
-            int blockHeight = bestHeaders.get(blockHash).getHeight();
-            int bestHeight = blockChain.getBestChainHeight();
-            deep = bestHeight - blockHeight + 1;
-        }
-
-        return deep;
-    }
-
-    /**
-     * A hiányzó blokkfejlécek letöltéséhez egy GetHeadersMessage üzenetet állítunk elő.
-     *
-     * @return
-     */
-    public GetHeadersMessage getMissingBlockHeaders() {
-
-        // ha épp folyamatban van blokkfejek lekérése, a futtatás nem folytatódik
-        if(isPending()){
-            return null;
-        }
-        setPending(true);
-
-        GetHeadersMessage getHeadersMessage = null;
-        StoredBlock myChainHead = blockChain.getChainHead();
-        Sha256Hash headerHash = myChainHead.getHeader().getHash();
-
-        // a hiányzó blokkfejlécek helyét meghatározzuk
-        List<Sha256Hash> locatorHashes = getLocator(headerHash);
-
-        if(locatorHashes != null){
-            getHeadersMessage = new GetHeadersMessage(
-                    App.netParams,
-                    locatorHashes,
-                    Sha256Hash.ZERO_HASH);
-        }else{
-            // nem várunk letöltendő fejlécekre
-            setPending(false);
-        }
-
-        return getHeadersMessage;
-    }
-
-    /**
-     * A kérdéses blokktól (ami már megvan) az ősblokkig visszavezető blokkok hash értékeit tartalmazó lista.
-     * Forrás: https://en.bitcoin.it/wiki/Protocol_documentation#getblocks
-     *
-     * @param fromBlockHash
-     * @return
-     */
-    private List<Sha256Hash> getLocator(Sha256Hash fromBlockHash) {
-
-        List<Sha256Hash> hashes = new ArrayList<Sha256Hash>();
-        int fromBlockHeight = -1;
-
-        try {
-            fromBlockHeight = spvBlockStore.get(fromBlockHash).getHeight();
-        } catch (BlockStoreException e) {
-            e.printStackTrace();
-        }
-
-        if(fromBlockHeight == -1){
-            return null;
-        }
-
-        // a szükséges blokkok magasságértékeit nyeri ki (a forrásoldal alapján)
-        List<Integer> blockHeights = new ArrayList<Integer>();
-        int step = 1;
-        int start = 0;
-        for (int i = fromBlockHeight; i > 0; i -= step, ++start) {
-            if(start >= 10){
-                step *= 2;
-            }
-
-            blockHeights.add(i);
-        }
-        blockHeights.add(0);
-
-        // a blokkmagasságok alapján végigmegyünk a meglévő blokkfej-láncunkon
-        Sha256Hash currentBlockHash = fromBlockHash;
-        for (int i = fromBlockHeight; i >= 0; --i) {
-
-            StoredBlock bestHeader = bestHeaders.get(currentBlockHash);
-
-            if(bestHeader == null){
-                System.out.println("Nincs ilyen blokk:" + currentBlockHash);
-
-                System.out.println("Hiányzó blokkfejlécek lokalizálása megszakítva. Blockchain: " +
-                    blockChain.getBestChainHeight() + " BestHeaders: " + (bestHeaders.size()-1));
-
-                return null;
-            }
-
-            int blockHeight = bestHeader.getHeight();
-
-            if(blockHeights.contains(blockHeight)){
-                blockHeights.remove(Integer.valueOf(blockHeight));
-                hashes.add(currentBlockHash);
-
-                // ha már csak a genezis blokk hash értéke szükséges, a ciklus
-                // további futtatására nincs szükség
-                if(blockHeights.size() == 1 && blockHeights.get(0) == 0){
-                    hashes.add(App.netParams.getGenesisBlock().getHash());
-                    break;
-                }
-            }
-
-            // a következőleg vizsgált blokk a mostani blokk szülő blokkja lesz
-            currentBlockHash = bestHeader.getHeader().getPrevBlockHash();
-        }
-
-        return hashes;
-    }
-
-
-    /**
-     * A csomóponttól kapott blokkfejléceket a blokklánchoz adjuk.
-     *
-     * @param headers
-     */
-    public void regMissingBlockHeaders(List<Block> headers){
-
-        Block last = null;
-
-        for(Block block: headers){
-            try {
-
-                blockChain.add(block);
-                last = block;
-
-                // ha a blokkláncot már szinkronizáltuk, akkor a mostani blokkfejek lekérése az utószinkronizáció része;
-                // az esetleges meglévő kimenetek beágyazottságának frissítéséhez a blokkfejek tartalmát valamely
-                // csomóponttól lekérjük
-                if(isChainSynced()){
-                    System.out.println(block.getHash() + " tartalma újból lekérendő.");
-                    addBlockHash(block.getHash());
-                }
-
-
-            } catch (PrunedException e) {
-                e.printStackTrace();
-            }
-        }
-
-        System.out.println(String.format("Utolsó blokk: (%s)", last.getHashAsString()));
-        setPending(false);
-    }
-}
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.*;
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
+import org.bitcoinj.utils.Threading;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * A blokklánc karbantartását végző osztály. A program indításakor először a hiányzó blokkfejeket
+ * kérjük le, ezek meghatározását ez az osztály végzi, valamint az időközben inkonzisztenssé vált
+ * lánc hiányzó elemeit azonosítja.
+ *
+ * A letöltött blokkfejeket a program egy lemezen tárolt, memóriába leképzett tárolóban (MappedBlockStore)
+ * tartja, így újraindításkor a blokklánc a legutóbb tárolt csúcstól folytatható. A Bitcoinj könyvtár által
+ * alkalmazott MemoryBlockStore csak az utolsó 5000 blokkfejet tartalmazta*, és minden indításkor a teljes
+ * blokkfej-láncot újra le kellett tölteni.
+ *
+ * * "Make MemoryBlockStore store only a rolling window of the last 5000 blocks. Fixes
+ * BuildCheckpoints which was trying to store every block header and running out of
+ * heap space."
+ *
+ * Új tároló esetén a blokkláncot nem a genezis blokktól, hanem a programhoz mellékelt ellenőrzőpontok
+ * (checkpoints) közül a kulcsaink létrehozása előtti legutolsótól kezdjük letölteni. Ha később egy ennél
+ * korábban létrehozott kulcsot töltünk be, a láncot egy korábbi ellenőrzőpontról újraszinkronizáljuk.
+ *
+ * Created by Imre Danyi on 2015.04.15..
+ */
+public class BlockchainManager {
+
+    // a mellékelt ellenőrzőpontok (magasság, hash, láncmunka, blokkfej) erőforrásfájlja
+    private static final String CHECKPOINTS_RESOURCE = "/checkpoints/" + App.netParams.getId() + ".checkpoints.txt";
+
+    // az ellenőrzőpont kiválasztásakor a kulcs létrehozási idejétől ennyivel korábbra megyünk vissza,
+    // mivel a blokkok időbélyegei pontatlanok lehetnek
+    private static final long CHECKPOINT_TIME_MARGIN = 7 * 24 * 60 * 60;
+
+    public BlockStore spvBlockStore;
+
+    // a hálózati és feldolgozó szálak zárolás nélkül olvassák; a cseréje (lásd rewindTo) a blokklánc
+    // zárolása mellett történik, így a módosítások (addBlock, regMissingBlockHeaders) mindig az aktuális láncra vonatkoznak
+    public volatile BlockChain blockChain;
+
+    private Checkpoints checkpoints;
+
+    // az aktuális fő lánc blokkjainak hash értékei magasság szerint
+    private BestChainIndex bestChain;
+
+    // a fő lánc legalacsonyabb ismert blokkja (a genezis blokk vagy egy ellenőrzőpont)
+    private StoredBlock chainStart;
+
+    private BlockChainListener chainListener;
+
+    // a hiányzó blokkfejek több csomóponttól történő párhuzamos letöltésének ütemezője
+    private HeaderSyncScheduler headerSync;
+
+    // a beérkező blokkfej-adagok párhuzamos előzetes ellenőrzése
+    private HeaderValidator headerValidator;
+
+    private boolean chainIsSynced = false;
+
+    // azon blokkok hash értékei, amelyek tartalmát még nem kértük le
+    public Utils.QueryQueue blockHashes;
+
+    // a már letöltött blokkok tartalma
+    private BlockCache blockCache;
+
+    // a teljes blokkokból előállított tömör blokkszűrők
+    private BlockFilterStore blockFilters;
+
+    public BlockchainManager() {
+
+        blockHashes = new Utils.QueryQueue();
+        headerSync = new HeaderSyncScheduler();
+        headerValidator = new HeaderValidator();
+
+        try {
+            blockCache = new BlockCache(App.netParams, App.blocksDir);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        try {
+            blockFilters = new BlockFilterStore(App.filtersFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        checkpoints = loadCheckpoints();
+
+        chainListener = new BlockChainListener() {
+
+            // minden új blokk hozzáadásakor meghívódik
+            public void notifyNewBestBlock(StoredBlock storedBlock) throws VerificationException {
+
+                // az újonnan beépült blokk lesz a fő lánc csúcsa; ha az index nem bővíthető, a hibát
+                // (a blokkfej-tároló hibáihoz hasonlóan) a blokk beépítését kezdeményezőnek jelezzük, mert
+                // az index ezután már nem felelne meg a blokkláncnak
+                int height = storedBlock.getHeight();
+                bestChain.truncate(height);
+                try {
+                    bestChain.put(height, getBlockHash(storedBlock));
+                } catch (BlockStoreException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            public void reorganize(StoredBlock splitPoint, List<StoredBlock> oldBlocks, List<StoredBlock> newBlocks)
+                    throws VerificationException {
+
+                // az elágazási pontnak és a régi ág blokkjainak a fő láncban kell lenniük
+                if(!bestChain.contains(splitPoint.getHeight(), getBlockHash(splitPoint))){
+                    System.out.println("HIBA! A blokkláncunk hiányos!");
+                    return;
+                }
+
+                for(StoredBlock oldBlock: oldBlocks){
+                    if(!bestChain.contains(oldBlock.getHeight(), getBlockHash(oldBlock))){
+                        System.out.println("HIBA! A fő lánc indexe nincs szinkronban a blokklánccal.");
+                        return;
+                    }
+                }
+
+                // a régi ág eltávolítása, majd az új ág blokkjainak beírása
+                bestChain.truncate(splitPoint.getHeight());
+                try {
+                    for(StoredBlock newBlock: newBlocks){
+                        bestChain.put(newBlock.getHeight(), getBlockHash(newBlock));
+                    }
+                } catch (BlockStoreException e) {
+                    throw new RuntimeException(e);
+                }
+
+                // a régi ág blokkjai által befoglalt kimenetek megerősítéseit a nyilvántartás alapján,
+                // a blokkok újbóli letöltése nélkül nullázzuk le
+                boolean walletIsAffected = false;
+                for(StoredBlock storedBlock: oldBlocks){
+                    walletIsAffected |= TransactionManager.blockDisconnected(getBlockHash(storedBlock));
+                }
+
+                // az új ág blokkjai közül csak a számunkra ismeretlen tartalmúakat kérjük le, és csak akkor,
+                // ha egy számunkra releváns tranzakció befoglaló blokkja ezekben lehet
+                boolean isDownloadRequired = walletIsAffected || TransactionManager.hasUnconfirmedTxs();
+                for (StoredBlock storedBlock: newBlocks){
+                    Sha256Hash blockHash = getBlockHash(storedBlock);
+
+                    if(!TransactionManager.blockConnected(blockHash) && isDownloadRequired){
+                        addBlockHash(blockHash);
+                    }
+                }
+            }
+
+            // nem használjuk
+            @Override
+            public boolean isTransactionRelevant(Transaction transaction) throws ScriptException {
+                return false;
+            }
+
+            // nem használjuk
+            @Override
+            public void receiveFromBlock(Transaction transaction, StoredBlock storedBlock, AbstractBlockChain.NewBlockType newBlockType, int i) throws VerificationException {
+
+            }
+
+            // nem használjuk
+            @Override
+            public boolean notifyTransactionIsInBlock(Sha256Hash sha256Hash, StoredBlock storedBlock, AbstractBlockChain.NewBlockType newBlockType, int i) throws VerificationException {
+                return false;
+            }
+        };
+
+        try {
+
+            // a korábban letöltött blokkfejeket a lemezről töltjük be
+            spvBlockStore = new MappedBlockStore(App.netParams, App.headersFile);
+
+            // új tároló esetén (csak a genezis blokkot tartalmazza) a láncot a legutóbbi ellenőrzőponttól
+            // kezdjük; az újonnan létrehozott kulcsokhoz nem tartozhat ennél korábbi tranzakció
+            if(spvBlockStore.getChainHead().getHeight() == 0){
+                startFromCheckpoint(System.currentTimeMillis() / 1000);
+            }
+
+            openBlockChain();
+
+        } catch (BlockStoreException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A mellékelt ellenőrzőpontok betöltése; ha az aktuális hálózathoz nincsenek ellenőrzőpontok,
+     * a lánc a genezis blokktól indul.
+     *
+     * @return
+     */
+    private Checkpoints loadCheckpoints(){
+        InputStream inputStream = BlockchainManager.class.getResourceAsStream(CHECKPOINTS_RESOURCE);
+
+        if(inputStream == null){
+            System.out.println("Nem található ellenőrzőpont-fájl: " + CHECKPOINTS_RESOURCE);
+            return null;
+        }
+
+        try {
+            Checkpoints checkpoints = new Checkpoints(App.netParams, inputStream);
+            System.out.println(String.format("%d ellenőrzőpont betöltve.", checkpoints.numCheckpoints()));
+            return checkpoints;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * A blokkfej-tárolóban a lánc csúcsát a megadott idő előtti legutolsó ellenőrzőpontra állítjuk.
+     *
+     * @param timeSeconds
+     * @return a kiválasztott ellenőrzőpont, vagy null, ha nincsenek ellenőrzőpontok
+     * @throws BlockStoreException
+     */
+    private StoredBlock startFromCheckpoint(long timeSeconds) throws BlockStoreException {
+        if(checkpoints == null){
+            return null;
+        }
+
+        StoredBlock checkpoint = checkpoints.getCheckpointBefore(timeSeconds - CHECKPOINT_TIME_MARGIN);
+        spvBlockStore.put(checkpoint);
+        spvBlockStore.setChainHead(checkpoint);
+
+        System.out.println(String.format("A blokklánc letöltése ellenőrzőpontról indul: %d (%s)",
+                checkpoint.getHeight(), getBlockHash(checkpoint)));
+
+        return checkpoint;
+    }
+
+    /**
+     * A fő lánc indexét a tárolóból felépítjük, majd a tárolóra épülő blokkláncot létrehozzuk.
+     *
+     * @throws BlockStoreException
+     */
+    private void openBlockChain() throws BlockStoreException {
+        loadBestChain();
+
+        BlockChain newChain = new BlockChain(App.netParams, spvBlockStore);
+
+        // a figyelőt a blokklánc szálán hívjuk meg, így a blockChain.add visszatérésekor
+        // a magasság szerinti index már a lánc aktuális állapotát tükrözi
+        newChain.addListener(chainListener, Threading.SAME_THREAD);
+
+        // a régi lánc (visszaállításkor) a figyelőt már nem értesíti
+        BlockChain oldChain = blockChain;
+        blockChain = newChain;
+        if(oldChain != null){
+            oldChain.removeListener(chainListener);
+        }
+    }
+
+    /**
+     * Ha egy betöltött kulcs a lánc kezdete előtt jött létre, a hozzá tartozó tranzakciókat befoglaló
+     * blokkok hiányoznak a fő láncunkból. Ilyenkor a láncot egy korábbi ellenőrzőponttól újból
+     * szinkronizáljuk (a már letöltött blokkfejek a tárolóban maradnak).
+     *
+     * Több kulcs betöltésekor egyszer, a legkorábbi létrehozási idővel hívandó. A visszaállítás a blokklánc
+     * zárolása mellett történik, így közben a csomópontoktól érkező blokkok és blokkfejek nem épülhetnek be
+     * a régi láncba.
+     *
+     * @param keyCreationTimeSeconds
+     */
+    public synchronized void rewindTo(long keyCreationTimeSeconds){
+        if(checkpoints == null || chainStart == null || chainStart.getHeight() == 0
+                || keyCreationTimeSeconds >= chainStart.getHeader().getTimeSeconds()){
+            return;
+        }
+
+        StoredBlock checkpoint = checkpoints.getCheckpointBefore(keyCreationTimeSeconds - CHECKPOINT_TIME_MARGIN);
+        if(checkpoint.getHeight() >= chainStart.getHeight()){
+            return;
+        }
+
+        try {
+            startFromCheckpoint(keyCreationTimeSeconds);
+            openBlockChain();
+
+            // a blokkfejek letöltését újrakezdjük
+            headerSync.reset();
+            chainIsNotSynced();
+            if(App.nm != null){
+                App.nm.restartSync();
+            }
+
+        } catch (BlockStoreException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A fő lánc magasság szerinti indexének megnyitása. Az index a lemezen tárolódik, így csak a tárolt
+     * lánccsúcstól visszafelé az első olyan blokkig kell haladnunk, amely már a helyén szerepel az indexben
+     * (rendes leállás után ez maga a csúcs); a teljes lánc bejárására csak új vagy sérült index esetén kerül sor.
+     *
+     * @throws BlockStoreException
+     */
+    private void loadBestChain() throws BlockStoreException {
+        if(bestChain == null){
+            try {
+                bestChain = new BestChainIndex(App.bestChainFile);
+            } catch (IOException e) {
+                throw new BlockStoreException(e);
+            }
+        }
+
+        // a tárolt csúcs feletti (pl. egy korábbi ellenőrzőpontra visszaállás előtti) bejegyzések eldobása
+        bestChain.truncate(spvBlockStore.getChainHead().getHeight());
+
+        int loaded = updateBestChain();
+        chainStart = spvBlockStore.get(bestChain.get(bestChain.getStartHeight()));
+
+        // ha az index legalsó blokkja nincs a tárolóban, az indexet teljesen újraépítjük
+        if(chainStart == null){
+            bestChain.truncate(-1);
+            loaded = updateBestChain();
+            chainStart = spvBlockStore.get(bestChain.get(bestChain.getStartHeight()));
+        }
+
+        System.out.println(String.format("Tárolt blokklánc magassága: %d (%d blokk került az indexbe)",
+                bestChain.getHeight(), loaded));
+    }
+
+    // a lánccsúcstól visszafelé az indexbe írja azokat a blokkokat, amelyek még nincsenek a helyükön
+    private int updateBestChain() throws BlockStoreException {
+        StoredBlock currentBlock = spvBlockStore.getChainHead();
+
+        int loaded = 0;
+        while (currentBlock != null && !bestChain.contains(currentBlock.getHeight(), getBlockHash(currentBlock))){
+            bestChain.put(currentBlock.getHeight(), getBlockHash(currentBlock));
+            currentBlock = spvBlockStore.get(getPrevBlockHash(currentBlock));
+            loaded++;
+        }
+
+        return loaded;
+    }
+
+    /**
+     * A fő lánc indexének csúcsmagassága.
+     * @return
+     */
+    public int getBestChainIndexHeight(){
+        return bestChain.getHeight();
+    }
+
+    /**
+     * A blokkfej-tároló lezárása (a program leállításakor).
+     */
+    public void close(){
+        if(blockCache != null){
+            blockCache.close();
+        }
+
+        if(blockFilters != null){
+            blockFilters.close();
+        }
+
+        if(bestChain != null){
+            bestChain.close();
+        }
+
+        try {
+            spvBlockStore.close();
+        } catch (BlockStoreException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Egy csomóponttól kapott blokk tartalmát a gyorsítótárba helyezzük.
+     *
+     * @param block
+     * @param filterTag a blokk szűréséhez használt Bloom-szűrő azonosítója (lásd BlockCache)
+     */
+    public void cacheBlock(BlockTransactions block, long filterTag){
+        if(blockCache != null){
+            blockCache.put(block, filterTag);
+        }
+
+        // a teljes blokkokhoz tömör szűrőt is készítünk
+        if(blockFilters != null && filterTag == BlockCache.FULL_BLOCK){
+            blockFilters.put(block, TransactionManager.getWalletTransactions());
+        }
+    }
+
+    /**
+     * A tárolt blokkszűrők törlése. Korábban létrehozott kulcs importálásakor hívandó: a szűrők csak az
+     * akkor ismert tárca-tranzakciók elköltését tartalmazzák, így az importált kulcs kimeneteit elköltő
+     * blokkokat tévesen irrelevánsnak ítélnék.
+     */
+    public void clearBlockFilters(){
+        if(blockFilters != null){
+            blockFilters.clear();
+        }
+    }
+
+    /**
+     * A blokk tartalmazhat-e számunkra releváns tranzakciót. Ha a blokkhoz tárolt szűrő alapján a címeink
+     * zároló szkriptjei nem szerepelnek benne (sem kimenetként, sem elköltött kimenetként), a blokkot nem
+     * kell letölteni.
+     *
+     * @param blockHash
+     * @return
+     */
+    private boolean isBlockRelevant(Sha256Hash blockHash){
+        if(blockFilters == null || App.am == null || App.tm == null){
+            return true;
+        }
+
+        return blockFilters.mayContain(blockHash, App.am.getOutputScripts());
+    }
+
+    /**
+     * A blokk tartalma, ha azt korábban az adott szűrővel (vagy teljes blokként) már letöltöttük, különben null.
+     *
+     * @param blockHash
+     * @param filterTag
+     * @return
+     */
+    public BlockTransactions getCachedBlock(Sha256Hash blockHash, long filterTag){
+        if(blockCache == null){
+            return null;
+        }
+
+        return blockCache.get(blockHash, filterTag);
+    }
+
+    public Sha256Hash getBlockHash(StoredBlock storedBlock){
+        return storedBlock.getHeader().getHash();
+    }
+
+    private Sha256Hash getPrevBlockHash(StoredBlock storedBlock){
+        return storedBlock.getHeader().getPrevBlockHash();
+    }
+
+    public void chainIsSynced(){
+        chainIsSynced = true;
+    }
+
+    public void chainIsNotSynced(){
+        chainIsSynced = false;
+    }
+
+    public boolean isChainSynced(){
+        return chainIsSynced;
+    }
+
+    public boolean addBlockHash(Sha256Hash blockHash){
+
+        // ha a blokk a szűrője alapján biztosan nem tartalmaz számunkra releváns tranzakciót, nem kérjük le
+        if(!isBlockRelevant(blockHash)){
+            System.out.println("Új block: " + blockHash + ", a szűrő alapján nem releváns.");
+            return false;
+        }
+
+        boolean isAdded =  blockHashes.addHash(blockHash);
+        if(isAdded){
+            System.out.println("Új block: " + blockHash + ", hozzáadva: " + isAdded);
+
+            if(App.nm != null){
+                App.nm.wakeUp();
+            }
+        }
+
+        return isAdded;
+    }
+
+    /**
+     * A beérkező lekért blokkot hozzáadjuk a blokklánchoz.
+     *
+     * @param block
+     * @return
+     */
+    public synchronized boolean addBlock(Block block){
+
+        boolean success = false;
+
+        try {
+            success = blockChain.add(block);
+        } catch (PrunedException e) {
+            e.printStackTrace();
+        }
+
+        return success;
+    }
+
+    /**
+     * A blokk magassága, ha az a fő lánc része, különben -1.
+     * A blokk magasságát a tárolóból kérdezzük le, majd a fő lánc indexében ellenőrizzük,
+     * hogy az adott magasságon valóban ez a blokk áll-e.
+     *
+     * @param blockHash
+     * @return
+     */
+    private int getBestChainHeight(Sha256Hash blockHash){
+        StoredBlock storedBlock = null;
+
+        try {
+            storedBlock = spvBlockStore.get(blockHash);
+        } catch (BlockStoreException e) {
+            e.printStackTrace();
+        }
+
+        if(storedBlock != null && bestChain.contains(storedBlock.getHeight(), blockHash)){
+            return storedBlock.getHeight();
+        }
+
+        return -1;
+    }
+
+    /**
+     * A blokk benne van-e a fő láncban.
+     *
+     * @param blockHash
+     * @return
+     */
+    public boolean isBlockInBestChain(Sha256Hash blockHash){
+        return getBestChainHeight(blockHash) != -1;
+    }
+
+    /**
+     * Egy adott blokk beágyazottságát kérdezi le.
+     * @param blockHash
+     * @return
+     */
+    public int getDeepInfo(Sha256Hash blockHash){
+        int deep = -1;
+
+        int blockHeight = getBestChainHeight(blockHash);
+        if(blockHeight != -1){
+            // a lánc csúcsát az indexből kérdezzük le, amely a láncátrendeződés közben is naprakész
+            int bestHeight = bestChain.getHeight();
+            deep = bestHeight - blockHeight + 1;
+        }
+
+        return deep;
+    }
+
+    /**
+     * A hiányzó blokkfejlécek letöltéséhez egy GetHeadersMessage üzenetet állítunk elő.
+     *
+     * Egy "adag*" blokkfejet korábban csak az előtte meglévők ismeretében tudtunk meghatározni, így
+     * egyszerre csak egy csomóponttól tölthettünk le. Most a letöltendő szakaszt az ellenőrzőpontok mentén
+     * tartományokra bontjuk (lásd HeaderSyncScheduler), és minden csomópont egy másik tartományt kap:
+     * a lokátor a tartomány legutolsó ismert blokkja, a stop hash a tartományt záró ellenőrzőpont.
+     *
+     * *Egy üzenetben ez maximum 2000 blokkfej lehet.
+     *
+     * @param peerBestHeight a lekérdezett csomópont által ismert lánc magassága
+     * @return null, ha a csomópont számára nincs kiosztható tartomány
+     */
+    public synchronized GetHeadersMessage getMissingBlockHeaders(long peerBestHeight) {
+
+        if(!headerSync.isPlanned()){
+            StoredBlock myChainHead = blockChain.getChainHead();
+            List<StoredBlock> checkpointsAbove = checkpoints == null ?
+                    new ArrayList<StoredBlock>() : checkpoints.getCheckpointsAbove(myChainHead.getHeight());
+
+            headerSync.plan(myChainHead, checkpointsAbove);
+        }
+
+        HeaderSyncScheduler.Segment segment = headerSync.assign(peerBestHeight);
+        if(segment == null){
+            return null;
+        }
+
+        Sha256Hash cursor = segment.getCursor();
+        List<Sha256Hash> locatorHashes;
+        Sha256Hash stopHash;
+
+        if(segment.isTail()){
+            // ha a tail kezdete már a fő lánc része, a lánc csúcsától a teljes lokátorral kérdezünk,
+            // így az esetleges elágazást is észleljük
+            if(isBlockInBestChain(cursor)){
+                locatorHashes = getLocator(getBlockHash(blockChain.getChainHead()));
+            }else{
+                locatorHashes = Collections.singletonList(cursor);
+            }
+            stopHash = Sha256Hash.ZERO_HASH;
+        }else{
+            locatorHashes = Collections.singletonList(cursor);
+            stopHash = segment.getStopHash();
+        }
+
+        if(locatorHashes == null){
+            // nem várunk letöltendő fejlécekre
+            headerSync.failed(cursor);
+            return null;
+        }
+
+        return new GetHeadersMessage(App.netParams, locatorHashes, stopHash);
+    }
+
+    /**
+     * A blokkfejek lekérése sikertelen volt (időtúllépés vagy üres válasz), a tartomány
+     * így más csomópontnak újból kiosztható.
+     *
+     * @param locatorHash a lekérés lokátorának első hash értéke
+     */
+    public void headersQueryFailed(Sha256Hash locatorHash){
+        headerSync.failed(locatorHash);
+
+        if(App.nm != null){
+            App.nm.wakeUp();
+        }
+    }
+
+    /**
+     * A kérdéses blokktól (ami már megvan) az ősblokkig visszavezető blokkok hash értékeit tartalmazó lista.
+     * Forrás: https://en.bitcoin.it/wiki/Protocol_documentation#getblocks
+     *
+     * A szükséges blokkokat a fő lánc magasság szerinti indexéből közvetlenül kérdezzük le. Ha a lánc
+     * ellenőrzőpontról indult, a lista a genezis blokk helyett az ellenőrzőponttal zárul.
+     *
+     * @param fromBlockHash
+     * @return
+     */
+    private List<Sha256Hash> getLocator(Sha256Hash fromBlockHash) {
+
+        List<Sha256Hash> hashes = new ArrayList<Sha256Hash>();
+        int fromBlockHeight = -1;
+
+        try {
+            fromBlockHeight = spvBlockStore.get(fromBlockHash).getHeight();
+        } catch (BlockStoreException e) {
+            e.printStackTrace();
+        }
+
+        if(fromBlockHeight == -1){
+            return null;
+        }
+
+        // a szükséges blokkok magasságértékei (a forrásoldal alapján): az első 10 egyesével,
+        // majd a lépésköz minden alkalommal duplázódik, végül a genezis blokk
+        int startHeight = chainStart.getHeight();
+        int step = 1;
+        int start = 0;
+        for (int i = fromBlockHeight; i > startHeight; i -= step, ++start) {
+            if(start >= 10){
+                step *= 2;
+            }
+
+            Sha256Hash blockHash = bestChain.get(i);
+
+            if(blockHash == null){
+                System.out.println("Nincs ilyen magasságú blokk: " + i);
+
+                System.out.println("Hiányzó blokkfejlécek lokalizálása megszakítva. Blockchain: " +
+                    blockChain.getBestChainHeight() + " BestChainIndex: " + bestChain.getHeight());
+
+                return null;
+            }
+
+            hashes.add(blockHash);
+        }
+        hashes.add(getBlockHash(chainStart));
+
+        return hashes;
+    }
+
+
+    /**
+     * A csomóponttól kapott blokkfejléceket a blokklánchoz adjuk. Ha az adag még nem kapcsolódik
+     * a láncunkhoz (egy korábbi tartomány még nem érkezett meg), átmenetileg eltároljuk; egy adag
+     * beépítése után az erre épülő, korábban eltárolt adagokat is sorban beépítjük.
+     *
+     * Az adagot előbb párhuzamosan ellenőrizzük (lásd HeaderValidator); ez a blokklánc zárolása nélkül
+     * történik, így a sorrendben történő beépítést nem tartja fel.
+     *
+     * Ha egy adag (akár egy korábban eltárolt) a beépítéskor bizonyul érvénytelennek, a tartományát más
+     * csomópont kapja meg, a küldőjével pedig a kapcsolatot lezárjuk.
+     *
+     * @param headers
+     * @param source az adagot küldő csomópont
+     * @return HAMIS, ha az adag érvénytelen blokkfejet tartalmaz, és így elutasításra került
+     */
+    public boolean regMissingBlockHeaders(List<Block> headers, Node source){
+
+        if(!headerValidator.validate(headers)){
+            System.out.println(String.format("%d blokkfejből álló adag elutasítva.", headers.size()));
+            return false;
+        }
+
+        synchronized (this){
+            connectMissingBlockHeaders(headers, source);
+        }
+
+        return true;
+    }
+
+    private void connectMissingBlockHeaders(List<Block> headers, Node source){
+
+        Sha256Hash prevBlockHash = headers.get(0).getPrevBlockHash();
+        int prevHeight = -1;
+
+        try {
+            StoredBlock prevBlock = spvBlockStore.get(prevBlockHash);
+            if(prevBlock != null){
+                prevHeight = prevBlock.getHeight();
+            }
+        } catch (BlockStoreException e) {
+            e.printStackTrace();
+        }
+
+        // a nem kapcsolódó adagot csak akkor tároljuk el, ha egy kiosztott tartományra érkezett
+        boolean isExpected = headerSync.received(headers, prevHeight, source);
+
+        if(prevHeight == -1){
+            if(isExpected){
+                System.out.println(String.format("%d blokkfej átmenetileg tárolva (%s után).",
+                        headers.size(), prevBlockHash));
+            }else{
+                System.out.println(String.format("%d nem kapcsolódó blokkfej eldobva (%s után).",
+                        headers.size(), prevBlockHash));
+            }
+            return;
+        }
+
+        List<Block> batchHeaders = headers;
+        Node batchSource = source;
+
+        while (batchHeaders != null){
+            Block last;
+            try {
+                last = connectBlockHeaders(batchHeaders);
+            } catch (VerificationException e) {
+                System.out.println(String.format("Érvénytelen blokkfej a(z) %s utáni adagban: %s",
+                        batchHeaders.get(0).getPrevBlockHash(), e.getMessage()));
+
+                // a tartományt a lánc csúcsától más csomópont kapja meg; a küldővel a kapcsolatot lezárjuk
+                StoredBlock chainHead = blockChain.getChainHead();
+                headerSync.rejected(batchHeaders, getBlockHash(chainHead), chainHead.getHeight());
+                if(batchSource != null && App.nm != null){
+                    App.nm.penalize(batchSource);
+                }
+                break;
+            }
+
+            HeaderSyncScheduler.Batch batch = last == null ? null : headerSync.takeBuffered(last.getHash());
+            batchHeaders = batch == null ? null : batch.getHeaders();
+            batchSource = batch == null ? null : batch.getSource();
+        }
+
+        headerSync.connected(blockChain.getBestChainHeight());
+
+        // a beépített blokkfejek után újabb tartományok oszthatók ki
+        if(App.nm != null){
+            App.nm.wakeUp();
+        }
+    }
+
+    private Block connectBlockHeaders(List<Block> headers) throws VerificationException {
+
+        Block last = null;
+
+        for(Block block: headers){
+            try {
+
+                blockChain.add(block);
+                last = block;
+
+                // ha a blokkláncot már szinkronizáltuk, akkor a mostani blokkfejek lekérése az utószinkronizáció része;
+                // az esetleges meglévő kimenetek beágyazottságának frissítéséhez a blokkfejek tartalmát valamely
+                // csomóponttól lekérjük
+                if(isChainSynced()){
+                    System.out.println(block.getHash() + " tartalma újból lekérendő.");
+                    addBlockHash(block.getHash());
+                }
+
+
+            } catch (PrunedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if(last != null){
+            System.out.println(String.format("Utolsó blokk: (%s)", last.getHashAsString()));
+        }
+
+        return last;
+    }
+}
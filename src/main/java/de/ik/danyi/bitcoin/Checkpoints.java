@@ -0,0 +1,41 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.CheckpointManager;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.StoredBlock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A mellékelt ellenőrzőpontokat kezelő osztály. A Bitcoinj CheckpointManager-t kiegészíti azzal,
+ * hogy egy adott magasság feletti összes ellenőrzőpont lekérdezhető; ezek szolgálnak a blokkfejek
+ * párhuzamos letöltésekor az egyes tartományok határaiként.
+ */
+public class Checkpoints extends CheckpointManager {
+
+    public Checkpoints(NetworkParameters params, InputStream inputStream) throws IOException {
+        super(params, inputStream);
+    }
+
+    /**
+     * Az adott magasság feletti ellenőrzőpontok növekvő magasság szerint.
+     *
+     * @param height
+     * @return
+     */
+    public List<StoredBlock> getCheckpointsAbove(int height){
+        List<StoredBlock> above = new ArrayList<StoredBlock>();
+
+        // az ellenőrzőpontok időbélyeg szerint, így egyben magasság szerint is rendezettek
+        for(StoredBlock checkpoint: checkpoints.values()){
+            if(checkpoint.getHeight() > height){
+                above.add(checkpoint);
+            }
+        }
+
+        return above;
+    }
+}
@@ -0,0 +1,125 @@
+package de.ik.danyi.bitcoin;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A DNS szerverek (seed) párhuzamos, aszinkron lekérdezése. Minden DNS szerver saját szálon kerül
+ * feloldásra, így egy nem válaszoló szerver a többit nem tartja fel, és az elsőként beérkező címekkel
+ * azonnal kapcsolódni lehet.
+ *
+ * Minden DNS szerverre határidőt állítunk (az időzítő keréken); a határidő után beérkező választ
+ * eldobjuk. A névfeloldás maga nem szakítható meg, ezért a szálak démon szálak, hogy a program
+ * leállását ne akadályozzák.
+ */
+public class DnsSeeder {
+
+    /**
+     * A feloldott címek fogadója; a DnsSeeder szálain hívódik meg.
+     */
+    public interface Listener {
+        void addressesResolved(String seed, InetAddress[] addrs);
+    }
+
+    private final SeedResolver resolver;
+    private final TimingWheel timingWheel;
+    private final ExecutorService executor;
+
+    // egy lekérdezési kör van folyamatban (egyszerre csak egy kört indítunk)
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // a folyamatban lévő körből még választ, vagy határidőt váró DNS szerverek száma
+    private final AtomicInteger remaining = new AtomicInteger(0);
+
+    public DnsSeeder(SeedResolver resolver, TimingWheel timingWheel){
+        this.resolver = resolver;
+        this.timingWheel = timingWheel;
+
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "DnsSeeder-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * A DNS szerverek lekérdezésének elindítása; a hívás nem blokkol.
+     *
+     * @param seeds a DNS szerverek nevei
+     * @param timeout a DNS szerverenkénti határidő (ms)
+     * @param listener
+     * @return false, ha egy korábbi kör még folyamatban van
+     */
+    public boolean resolve(String[] seeds, long timeout, final Listener listener){
+        if(seeds == null || seeds.length == 0 || !running.compareAndSet(false, true)){
+            return false;
+        }
+
+        remaining.set(seeds.length);
+
+        for(final String seed: seeds){
+
+            // a DNS szerver eredménye (válasz, hiba vagy határidő) csak egyszer számít
+            final AtomicBoolean finished = new AtomicBoolean(false);
+
+            final TimingWheel.Timeout deadline = timingWheel.schedule(timeout, new Runnable() {
+                @Override
+                public void run() {
+                    if(finished.compareAndSet(false, true)){
+                        System.out.println("A DNS szerver nem válaszolt időben: " + seed);
+                        seedFinished();
+                    }
+                }
+            });
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    InetAddress[] addrs = null;
+                    try {
+                        addrs = resolver.resolve(seed);
+                    } catch (UnknownHostException e) {
+                        System.out.println("A DNS szerver nem érhető el: " + seed);
+                    }
+
+                    if(!finished.compareAndSet(false, true)){
+                        return;
+                    }
+                    deadline.cancel();
+
+                    try {
+                        if(addrs != null && addrs.length > 0){
+                            listener.addressesResolved(seed, addrs);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        seedFinished();
+                    }
+                }
+            });
+        }
+
+        return true;
+    }
+
+    public boolean isRunning(){
+        return running.get();
+    }
+
+    private void seedFinished(){
+        if(remaining.decrementAndGet() == 0){
+            running.set(false);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.VarInt;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+/**
+ * Golomb-Rice kódolt halmaz (GCS) a BIP158 szerint. Egy blokk elemeit (pl. kimenetek zároló szkriptjei)
+ * SipHash-2-4 segítségével a [0, N*M) tartományba képezzük, a rendezett értékek különbségeit pedig
+ * Golomb-Rice kódolással tömörítjük. Egy elem halmazbeli tartalmazása így ~1/M valószínűségű hamis
+ * pozitív találattal, a blokk letöltése nélkül vizsgálható.
+ *
+ * A SipHash kulcsa a blokk hash értékének első 16 bájtja (belső bájtsorrendben).
+ */
+public class GolombCodedSet {
+
+    // a BIP158 "basic" szűrő paraméterei
+    public static final int P = 19;
+    public static final long M = 784931;
+
+    /**
+     * Az elemekből a szűrő előállítása: [elemek száma (CompactSize)][Golomb-Rice kódolt különbségek].
+     *
+     * @param blockHash
+     * @param elements
+     * @return
+     */
+    public static byte[] build(Sha256Hash blockHash, Collection<byte[]> elements){
+        long[] key = sipHashKey(blockHash);
+
+        // az ismétlődő elemeket csak egyszer vesszük figyelembe
+        Set<String> unique = new HashSet<String>();
+        List<byte[]> items = new ArrayList<byte[]>();
+        for(byte[] element: elements){
+            if(unique.add(Hex.toHexString(element))){
+                items.add(element);
+            }
+        }
+
+        int n = items.size();
+        long[] values = hashedSet(key, items, (long)n * M);
+        Arrays.sort(values);
+
+        BitWriter writer = new BitWriter();
+        long last = 0;
+        for(long value: values){
+            long delta = value - last;
+            last = value;
+
+            // hányados unáris kódolással, majd a maradék P biten
+            for(long q = delta >>> P; q > 0; --q){
+                writer.writeBit(1);
+            }
+            writer.writeBit(0);
+            writer.writeBits(delta, P);
+        }
+
+        byte[] count = new VarInt(n).encode();
+        byte[] bits = writer.toByteArray();
+
+        byte[] filter = new byte[count.length + bits.length];
+        System.arraycopy(count, 0, filter, 0, count.length);
+        System.arraycopy(bits, 0, filter, count.length, bits.length);
+
+        return filter;
+    }
+
+    /**
+     * A keresett elemek közül legalább egy benne van-e a szűrőben.
+     *
+     * @param blockHash
+     * @param filter
+     * @param queries
+     * @return
+     */
+    public static boolean matchAny(Sha256Hash blockHash, byte[] filter, Collection<byte[]> queries){
+        VarInt count = new VarInt(filter, 0);
+        long n = count.value;
+
+        if(n == 0 || queries.isEmpty()){
+            return false;
+        }
+
+        long[] key = sipHashKey(blockHash);
+        long[] targets = hashedSet(key, new ArrayList<byte[]>(queries), n * M);
+        Arrays.sort(targets);
+
+        // a rendezett szűrőelemeket és a rendezett keresett értékeket egyszerre járjuk be
+        BitReader reader = new BitReader(filter, count.getOriginalSizeInBytes());
+        long value = 0;
+        int t = 0;
+
+        for(long i = 0; i < n; ++i){
+            long q = 0;
+            while (reader.readBit() == 1){
+                q++;
+            }
+            value += (q << P) | reader.readBits(P);
+
+            while (t < targets.length && Long.compareUnsigned(targets[t], value) < 0){
+                t++;
+            }
+
+            if(t == targets.length){
+                return false;
+            }
+
+            if(targets[t] == value){
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static long[] hashedSet(long[] key, List<byte[]> items, long f){
+        long[] values = new long[items.size()];
+
+        for(int i=0; i<items.size(); ++i){
+            values[i] = multiplyHighUnsigned(sipHash24(key[0], key[1], items.get(i)), f);
+        }
+
+        return values;
+    }
+
+    private static long[] sipHashKey(Sha256Hash blockHash){
+        // a Sha256Hash a megjelenítési (fordított) bájtsorrendet tárolja
+        byte[] hash = org.bitcoinj.core.Utils.reverseBytes(blockHash.getBytes());
+
+        return new long[]{ readLongLE(hash, 0), readLongLE(hash, 8) };
+    }
+
+    private static long readLongLE(byte[] bytes, int offset){
+        long value = 0;
+        for(int i=7; i>=0; --i){
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    // (a * b) >> 64 előjel nélküli 64 bites értékekre
+    private static long multiplyHighUnsigned(long a, long b){
+        long aLo = a & 0xFFFFFFFFL, aHi = a >>> 32;
+        long bLo = b & 0xFFFFFFFFL, bHi = b >>> 32;
+
+        long lo = aLo * bLo;
+        long mid1 = aHi * bLo + (lo >>> 32);
+        long mid2 = aLo * bHi + (mid1 & 0xFFFFFFFFL);
+
+        return aHi * bHi + (mid1 >>> 32) + (mid2 >>> 32);
+    }
+
+    /**
+     * SipHash-2-4 (https://131002.net/siphash/)
+     */
+    static long sipHash24(long k0, long k1, byte[] data){
+        long v0 = 0x736f6d6570736575L ^ k0;
+        long v1 = 0x646f72616e646f6dL ^ k1;
+        long v2 = 0x6c7967656e657261L ^ k0;
+        long v3 = 0x7465646279746573L ^ k1;
+
+        int length = data.length;
+        int blocks = length / 8;
+
+        for(int i=0; i<blocks; ++i){
+            long m = readLongLE(data, i * 8);
+
+            v3 ^= m;
+            for(int r=0; r<2; ++r){
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+        }
+
+        // az utolsó (nem teljes) blokk, a legfelső bájton a hosszal
+        long last = ((long)length & 0xff) << 56;
+        for(int i = length - 1; i >= blocks * 8; --i){
+            last |= ((long)(data[i] & 0xff)) << (8 * (i - blocks * 8));
+        }
+
+        v3 ^= last;
+        for(int r=0; r<2; ++r){
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v0 ^= last;
+
+        v2 ^= 0xff;
+        for(int r=0; r<4; ++r){
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    /**
+     * Bitenkénti írás (a legmagasabb helyiértékű bittől kezdve).
+     */
+    private static class BitWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int current = 0;
+        private int bitCount = 0;
+
+        private void writeBit(int bit){
+            current = (current << 1) | bit;
+            if(++bitCount == 8){
+                out.write(current);
+                current = 0;
+                bitCount = 0;
+            }
+        }
+
+        private void writeBits(long value, int bits){
+            for(int i = bits - 1; i >= 0; --i){
+                writeBit((int)((value >>> i) & 1));
+            }
+        }
+
+        private byte[] toByteArray(){
+            if(bitCount > 0){
+                out.write(current << (8 - bitCount));
+                current = 0;
+                bitCount = 0;
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Bitenkénti olvasás (a legmagasabb helyiértékű bittől kezdve).
+     */
+    private static class BitReader {
+        private final byte[] data;
+        private int position;
+        private int bit = 0;
+
+        private BitReader(byte[] data, int offset){
+            this.data = data;
+            this.position = offset;
+        }
+
+        private int readBit(){
+            if(position >= data.length){
+                throw new IllegalStateException("A szűrő sérült.");
+            }
+
+            int value = (data[position] >>> (7 - bit)) & 1;
+            if(++bit == 8){
+                bit = 0;
+                position++;
+            }
+            return value;
+        }
+
+        private long readBits(int bits){
+            long value = 0;
+            for(int i=0; i<bits; ++i){
+                value = (value << 1) | readBit();
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+
+import java.util.*;
+
+/**
+ * A hiányzó blokkfejek párhuzamos letöltését ütemező osztály. A lánc csúcsa és a legutolsó ismert
+ * blokk közötti szakaszt az ellenőrzőpontok mentén tartományokra (Segment) bontjuk. Mivel egy
+ * tartomány kezdő és záró blokkjának hash értéke ismert, az egyes tartományok különböző csomópontoktól
+ * egyszerre kérhetők le (getheaders: kezdő hash, stop hash).
+ *
+ * A beérkező blokkfej-adagokat az előző blokk hash értéke szerint átmenetileg eltároljuk, és csak akkor
+ * építjük be a blokkláncba, ha a fő lánc csúcsához kapcsolódnak; a beépítés így sorrendben történik.
+ * Csak a kiosztott (függőben lévő) tartományokra érkező adagokat tároljuk el, legfeljebb
+ * MAX_BUFFERED_HEADERS blokkfejet, így a kéretlen vagy nem kapcsolódó adagok a memóriát nem tölthetik meg.
+ *
+ * Az utolsó ellenőrzőpont utáni szakasz (tail) vége nem ismert, ezt egyszerre csak egy csomóponttól,
+ * a korábbi tartományok letöltése után kérjük le.
+ */
+public class HeaderSyncScheduler {
+
+    // a beépítési ponthoz képest legfeljebb ennyi tartományt töltünk le előre, hogy
+    // az átmenetileg tárolt blokkfejek száma korlátos maradjon
+    private static final int MAX_SEGMENTS_AHEAD = 16;
+
+    // az átmenetileg tárolt blokkfejek legnagyobb száma (MAX_SEGMENTS_AHEAD teljes, 2000 blokkfejes adag)
+    private static final int MAX_BUFFERED_HEADERS = MAX_SEGMENTS_AHEAD * 2000;
+
+    /**
+     * Egy letöltendő tartomány: a legutolsó ismert blokk (cursor), valamint a tartomány
+     * záró blokkja (ellenőrzőpont; tail esetén null).
+     */
+    public static class Segment {
+
+        private Sha256Hash cursor;
+        private int cursorHeight;
+        private final Sha256Hash stopHash;
+        private final int stopHeight;
+
+        private boolean inFlight = false;
+        private boolean done = false;
+
+        private Segment(Sha256Hash cursor, int cursorHeight, Sha256Hash stopHash, int stopHeight){
+            this.cursor = cursor;
+            this.cursorHeight = cursorHeight;
+            this.stopHash = stopHash;
+            this.stopHeight = stopHeight;
+        }
+
+        public Sha256Hash getCursor(){
+            return cursor;
+        }
+
+        public int getCursorHeight(){
+            return cursorHeight;
+        }
+
+        public Sha256Hash getStopHash(){
+            return stopHash;
+        }
+
+        public boolean isTail(){
+            return stopHash == null;
+        }
+
+        private void setCursor(Sha256Hash cursor, int cursorHeight){
+            this.cursor = cursor;
+            this.cursorHeight = cursorHeight;
+        }
+    }
+
+    /**
+     * Egy átmenetileg tárolt blokkfej-adag, valamint az azt küldő csomópont (ha ismert), hogy a beépítéskor
+     * érvénytelennek bizonyuló adag küldője kizárható legyen.
+     */
+    public static class Batch {
+
+        private final List<Block> headers;
+        private final Node source;
+
+        private Batch(List<Block> headers, Node source){
+            this.headers = headers;
+            this.source = source;
+        }
+
+        public List<Block> getHeaders(){
+            return headers;
+        }
+
+        public Node getSource(){
+            return source;
+        }
+    }
+
+    // a letöltendő tartományok növekvő magasság szerint
+    private final LinkedList<Segment> segments;
+
+    // a még be nem épített blokkfej-adagok az első blokk szülőjének hash értéke szerint
+    private final Map<Sha256Hash, Batch> buffered;
+    private int bufferedHeaders;
+
+    private boolean planned;
+
+    public HeaderSyncScheduler(){
+        segments = new LinkedList<Segment>();
+        buffered = new HashMap<Sha256Hash, Batch>();
+        planned = false;
+    }
+
+    public synchronized boolean isPlanned(){
+        return planned;
+    }
+
+    /**
+     * A lánc csúcsától kezdődően az ellenőrzőpontok mentén felosztja a letöltendő szakaszt.
+     *
+     * @param chainHead
+     * @param checkpointsAbove a lánc csúcsa feletti ellenőrzőpontok növekvő sorrendben
+     */
+    public synchronized void plan(StoredBlock chainHead, List<StoredBlock> checkpointsAbove){
+        segments.clear();
+        buffered.clear();
+        bufferedHeaders = 0;
+
+        Sha256Hash cursor = chainHead.getHeader().getHash();
+        int cursorHeight = chainHead.getHeight();
+
+        for(StoredBlock checkpoint: checkpointsAbove){
+            Sha256Hash checkpointHash = checkpoint.getHeader().getHash();
+            segments.add(new Segment(cursor, cursorHeight, checkpointHash, checkpoint.getHeight()));
+
+            cursor = checkpointHash;
+            cursorHeight = checkpoint.getHeight();
+        }
+
+        segments.add(new Segment(cursor, cursorHeight, null, -1));
+        planned = true;
+
+        System.out.println(String.format("Blokkfejek letöltése %d tartományban.", segments.size()));
+    }
+
+    public synchronized void reset(){
+        segments.clear();
+        buffered.clear();
+        bufferedHeaders = 0;
+        planned = false;
+    }
+
+    /**
+     * A csomópont számára a következő, még le nem kért tartományt választja ki. A tail-t csak
+     * akkor osztjuk ki, ha az előtte lévő tartományok letöltése már befejeződött.
+     *
+     * @param peerBestHeight a csomópont által ismert lánc magassága
+     * @return
+     */
+    public synchronized Segment assign(long peerBestHeight){
+        int ahead = 0;
+        boolean previousDone = true;
+
+        for(Segment segment: segments){
+            if(ahead++ >= MAX_SEGMENTS_AHEAD){
+                break;
+            }
+
+            boolean assignable = !segment.done && !segment.inFlight && segment.cursorHeight < peerBestHeight;
+            if(assignable && (!segment.isTail() || previousDone)){
+                segment.inFlight = true;
+                return segment;
+            }
+
+            previousDone = previousDone && segment.done;
+        }
+
+        return null;
+    }
+
+    /**
+     * A tartomány lekérése sikertelen volt (pl. időtúllépés), így az újból kiosztható.
+     *
+     * @param cursor a lekéréskor használt kezdő hash
+     */
+    public synchronized void failed(Sha256Hash cursor){
+        for(Segment segment: segments){
+            if(segment.cursor.equals(cursor)){
+                segment.inFlight = false;
+            }
+        }
+    }
+
+    public synchronized boolean received(List<Block> headers, int prevHeight){
+        return received(headers, prevHeight, null);
+    }
+
+    /**
+     * A beérkező blokkfej-adag alapján frissíti a megfelelő (függőben lévő) tartomány állapotát. Ha az adag
+     * még nem kapcsolódik a láncunkhoz (prevHeight == -1), átmenetileg eltároljuk, de csak akkor, ha egy
+     * kiosztott tartományra érkezett, és a tárolt blokkfejek száma a korlátot nem lépi túl; különben
+     * eldobjuk (a tartományt később újból lekérjük).
+     *
+     * @param headers
+     * @param prevHeight az adag első blokkja szülőjének magassága, ha az már a tárolóban van, különben -1
+     * @param source az adagot küldő csomópont
+     * @return HAMIS, ha az adag nem kiosztott tartományra érkezett, vagy nem kapcsolódik és nem tárolható el
+     */
+    public synchronized boolean received(List<Block> headers, int prevHeight, Node source){
+        Block first = headers.get(0);
+        Block last = headers.get(headers.size() - 1);
+
+        Segment segment = null;
+        int lastHeight = -1;
+
+        for(Segment s: segments){
+            if(s.inFlight && s.cursor.equals(first.getPrevBlockHash())){
+                segment = s;
+                lastHeight = s.cursorHeight + headers.size();
+                break;
+            }
+        }
+
+        // a tail lekérése a teljes lokátorral is történhet, így a válasz egy korábbi blokkhoz is kapcsolódhat
+        // (elágazás); ekkor a magasság a ténylegesen kapcsolódó blokkból adódik
+        if(segment == null && prevHeight != -1 && !segments.isEmpty() && segments.getLast().inFlight){
+            segment = segments.getLast();
+            lastHeight = prevHeight + headers.size();
+        }
+
+        if(segment == null){
+            return false;
+        }
+
+        if(prevHeight == -1){
+            if(bufferedHeaders + headers.size() > MAX_BUFFERED_HEADERS){
+                segment.inFlight = false;
+                return false;
+            }
+
+            Batch replaced = buffered.put(first.getPrevBlockHash(), new Batch(headers, source));
+            bufferedHeaders += headers.size() - (replaced == null ? 0 : replaced.headers.size());
+        }
+
+        segment.setCursor(last.getHash(), lastHeight);
+        segment.inFlight = false;
+
+        if(!segment.isTail() && segment.stopHash.equals(last.getHash())){
+            segment.done = true;
+        }
+
+        return true;
+    }
+
+    /**
+     * Az adott blokkhoz kapcsolódó, átmenetileg tárolt blokkfej-adag (ha van).
+     *
+     * @param prevBlockHash
+     * @return
+     */
+    public synchronized Batch takeBuffered(Sha256Hash prevBlockHash){
+        Batch batch = buffered.remove(prevBlockHash);
+        if(batch != null){
+            bufferedHeaders -= batch.headers.size();
+        }
+        return batch;
+    }
+
+    /**
+     * Az adag beépítése érvénytelen blokkfej miatt meghiúsult. Az érvénytelen adagra épülő, átmenetileg
+     * tárolt adagokat eldobjuk, az adagot tartalmazó tartományt pedig a lánc utolsó beépített blokkjától
+     * újból kiosztjuk (egy másik csomópontnak).
+     *
+     * @param headers az elutasított adag
+     * @param cursor a lánc utolsó beépített blokkja
+     * @param cursorHeight
+     */
+    public synchronized void rejected(List<Block> headers, Sha256Hash cursor, int cursorHeight){
+        Sha256Hash lastHash = headers.get(headers.size() - 1).getHash();
+        Batch next;
+        while ((next = buffered.remove(lastHash)) != null){
+            bufferedHeaders -= next.headers.size();
+            lastHash = next.headers.get(next.headers.size() - 1).getHash();
+        }
+
+        for(Segment segment: segments){
+            if(segment.isTail() || segment.stopHeight > cursorHeight){
+                segment.setCursor(cursor, cursorHeight);
+                segment.inFlight = false;
+                segment.done = false;
+                break;
+            }
+        }
+    }
+
+    // az átmenetileg tárolt blokkfejek száma
+    public synchronized int getBufferedHeaders(){
+        return bufferedHeaders;
+    }
+
+    /**
+     * A lánc csúcsa elérte az adott magasságot; a teljesen beépült tartományokat eltávolítjuk.
+     *
+     * @param chainHeight
+     */
+    public synchronized void connected(int chainHeight){
+        Iterator<Segment> iterator = segments.iterator();
+        while (iterator.hasNext()){
+            Segment segment = iterator.next();
+
+            if(segment.done && segment.stopHeight <= chainHeight){
+                iterator.remove();
+            }else{
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.VerificationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * A csomópontoktól kapott blokkfej-adagok előzetes ellenőrzése, mielőtt azokat a blokklánchoz adnánk.
+ * Egy adag (legfeljebb 2000 blokkfej) ellenőrzését részekre bontjuk, és a részeket párhuzamosan
+ * egy szálkészleten végezzük:
+ *
+ * - a blokkfejek hash értékének (dupla SHA-256) kiszámítása,
+ * - a munkabizonyíték (proof of work) ellenőrzése a blokkfejben megadott célértékhez képest,
+ * - az adagon belüli láncolás: minden blokkfej az előtte lévőre hivatkozik.
+ *
+ * A kiszámított hash értékeket a Block objektumok megőrzik, így a blokklánchoz adáskor (ami továbbra
+ * is egy szálon, sorban történik) azokat már nem kell újból kiszámítani.
+ */
+public class HeaderValidator {
+
+    // ennél kisebb adagot (pl. egy új blokk bejelentését) nem bontunk részekre
+    private static final int MIN_PARALLEL_BATCH = 64;
+
+    private final ExecutorService executor;
+    private final int threads;
+
+    public HeaderValidator(){
+        threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "HeaderValidator-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Az adag minden blokkfeje érvényes-e, és a blokkfejek láncot alkotnak-e. Ha bármelyik
+     * blokkfej hibás, a teljes adagot elutasítjuk.
+     *
+     * @param headers
+     * @return
+     */
+    public boolean validate(final List<Block> headers){
+        int size = headers.size();
+
+        if(size < MIN_PARALLEL_BATCH || threads == 1){
+            return validateRange(headers, 0, size);
+        }
+
+        int chunk = (size + threads - 1) / threads;
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+        for(int from = 0; from < size; from += chunk){
+            final int start = from;
+            final int end = Math.min(size, from + chunk);
+
+            results.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return validateRange(headers, start, end);
+                }
+            }));
+        }
+
+        boolean valid = true;
+
+        for(Future<Boolean> result: results){
+            try {
+                valid &= result.get();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                valid = false;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                valid = false;
+            }
+        }
+
+        if(!valid){
+            return false;
+        }
+
+        // a részek határán lévő blokkfejek láncolása (a hash értékek ekkor már ki vannak számítva)
+        for(int from = chunk; from < size; from += chunk){
+            if(!isLinked(headers, from)){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Az adag [start, end) tartományának ellenőrzése. A tartomány első blokkfejének láncolását
+     * (az előző részhez) a hívó ellenőrzi.
+     */
+    private boolean validateRange(List<Block> headers, int start, int end){
+        for(int i = start; i < end; ++i){
+            Block header = headers.get(i);
+
+            try {
+                // hash érték kiszámítása, munkabizonyíték és időbélyeg ellenőrzése
+                header.verifyHeader();
+            } catch (VerificationException e) {
+                System.out.println(String.format("Érvénytelen blokkfej: %s (%s)",
+                        header.getHashAsString(), e.getMessage()));
+                return false;
+            }
+
+            if(i > start && !isLinked(headers, i)){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isLinked(List<Block> headers, int i){
+        if(!headers.get(i).getPrevBlockHash().equals(headers.get(i - 1).getHash())){
+            System.out.println(String.format("A blokkfejek nem alkotnak láncot: %s",
+                    headers.get(i).getHashAsString()));
+            return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,323 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.*;
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Lemezen tárolt, memóriába leképzett (memory-mapped) blokkfej-tároló. A MemoryBlockStore-ral
+ * ellentétben a letöltött blokkfejek a program újraindítása után is megmaradnak, így a
+ * blokkláncot nem kell minden indításkor a genezis blokktól újból letölteni.
+ *
+ * A fájl egy rövid fejlécből, majd azonos méretű rekordokból áll. Egy rekord a blokk hash
+ * értékét, valamint a StoredBlock tömörített alakját (láncmunka, magasság, 80 bájtos
+ * blokkfej) tartalmazza:
+ *
+ * [hash (32 bájt)][láncmunka (12 bájt)][magasság (4 bájt)][blokkfej (80 bájt)]
+ *
+ * A hash értékek alapján történő kereséshez a rekordok sorszámát egy indexben tartjuk nyilván,
+ * amelyet megnyitáskor a fájlban tárolt hash értékekből építünk fel (újrahashelés nélkül).
+ *
+ * A blokkfejek és az index is a Java heap-en kívül (off-heap) helyezkednek el: a rekordokat a
+ * leképzett fájl, az indexet egy nyílt címzésű hash tábla tartalmazza egy direkt ByteBuffer-ben.
+ * Egy bejegyzés a hash érték utolsó 8 bájtjából és a rekord sorszámából áll; egyezés esetén a teljes
+ * hash értéket a rekordban ellenőrizzük. StoredBlock objektum csak lekérdezéskor jön létre, így a
+ * blokkfej-lánc mérete a heap-et és a szemétgyűjtést nem terheli.
+ */
+public class MappedBlockStore implements BlockStore {
+
+    private static final int MAGIC = 0x42544853;          // "BTHS"
+    private static final int VERSION = 1;
+
+    // fejléc: magic, verzió, rekordok száma, a lánc csúcsát tartalmazó rekord sorszáma
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_COUNT_OFFSET = 8;
+    private static final int CHAIN_HEAD_OFFSET = 12;
+
+    public static final int RECORD_SIZE = 32 + StoredBlock.COMPACT_SERIALIZED_SIZE;
+
+    // a fájlt legalább ennyi rekorddal, egyébként a méretének felével bővítjük, így a teljes blokkfej-lánc
+    // letöltése során is csak néhány újraleképzésre kerül sor
+    private static final int GROWTH_RECORDS = 16384;
+
+    private final NetworkParameters params;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    private int recordCount;
+    private int chainHeadRecord;
+
+    // az index egy bejegyzése: a hash érték utolsó 8 bájtja, valamint a rekord sorszáma + 1 (0: üres hely)
+    private static final int INDEX_SLOT_SIZE = 12;
+    private static final int INDEX_INITIAL_SLOTS = 1 << 16;
+
+    // hash érték -> rekord sorszáma (nyílt címzésű hash tábla, legfeljebb félig töltve)
+    private ByteBuffer index;
+    private int indexSlots;
+    private int indexSize;
+
+    public MappedBlockStore(NetworkParameters params, File file) throws BlockStoreException {
+        this.params = params;
+        indexSlots = INDEX_INITIAL_SLOTS;
+        index = ByteBuffer.allocateDirect(indexSlots * INDEX_SLOT_SIZE);
+
+        try {
+            boolean exists = file.exists() && file.length() >= HEADER_SIZE;
+
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            channel = randomAccessFile.getChannel();
+
+            if(exists){
+                map(channel.size());
+                load();
+            }else{
+                map(HEADER_SIZE + (long)GROWTH_RECORDS * RECORD_SIZE);
+                init();
+            }
+
+        } catch (IOException e) {
+            throw new BlockStoreException(e);
+        }
+    }
+
+    // a régi leképzést az új létrejötte után azonnal megszüntetjük (minden hozzáférés a tároló zárolása mellett történik)
+    private void map(long size) throws IOException {
+        MappedByteBuffer oldBuffer = buffer;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if(oldBuffer != null){
+            Utils.unmap(oldBuffer);
+        }
+    }
+
+    /**
+     * Új tároló létrehozása; a genezis blokk fejlécét azonnal eltároljuk.
+     */
+    private void init() throws BlockStoreException {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        recordCount = 0;
+        chainHeadRecord = -1;
+        writeCounters();
+
+        try {
+            Block genesisBlock = params.getGenesisBlock().cloneAsHeader();
+            StoredBlock storedGenesis = new StoredBlock(genesisBlock, genesisBlock.getWork(), 0);
+            put(storedGenesis);
+            setChainHead(storedGenesis);
+        } catch (VerificationException e) {
+            throw new BlockStoreException(e);
+        }
+    }
+
+    /**
+     * Meglévő tároló betöltése: a rekordok hash értékei alapján felépítjük az indexet.
+     */
+    private void load() throws BlockStoreException {
+        if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+            throw new BlockStoreException("A blokkfej-tároló fájl formátuma nem megfelelő.");
+        }
+
+        recordCount = buffer.getInt(RECORD_COUNT_OFFSET);
+        chainHeadRecord = buffer.getInt(CHAIN_HEAD_OFFSET);
+
+        if(recordCount < 0 || recordOffset(recordCount) > buffer.capacity()
+                || chainHeadRecord < 0 || chainHeadRecord >= recordCount){
+            throw new BlockStoreException("A blokkfej-tároló sérült.");
+        }
+
+        for(int i=0; i<recordCount; ++i){
+            indexInsert(buffer.getLong(recordOffset(i) + 24), i);
+        }
+
+        System.out.println(String.format("Blokkfej-tároló betöltve: %d blokkfej.", recordCount));
+    }
+
+    private int recordOffset(int record){
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    // a hash érték utolsó 8 bájtja (a blokk hash értékek eleje a nehézség miatt többnyire nulla)
+    private static long indexKey(byte[] hashBytes){
+        return ByteBuffer.wrap(hashBytes, 24, 8).getLong();
+    }
+
+    private int indexSlot(long key){
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int)(mixed >>> 32) & (indexSlots - 1);
+    }
+
+    private void indexInsert(long key, int record){
+        if((indexSize + 1) * 2L > indexSlots){
+            growIndex();
+        }
+
+        int slot = indexSlot(key);
+        while (index.getInt(slot * INDEX_SLOT_SIZE + 8) != 0){
+            slot = (slot + 1) & (indexSlots - 1);
+        }
+
+        index.putLong(slot * INDEX_SLOT_SIZE, key);
+        index.putInt(slot * INDEX_SLOT_SIZE + 8, record + 1);
+        indexSize++;
+    }
+
+    private void growIndex(){
+        ByteBuffer oldIndex = index;
+        int oldSlots = indexSlots;
+
+        indexSlots = oldSlots * 2;
+        index = ByteBuffer.allocateDirect(indexSlots * INDEX_SLOT_SIZE);
+
+        for(int i=0; i<oldSlots; ++i){
+            int record = oldIndex.getInt(i * INDEX_SLOT_SIZE + 8);
+            if(record != 0){
+                long key = oldIndex.getLong(i * INDEX_SLOT_SIZE);
+
+                int slot = indexSlot(key);
+                while (index.getInt(slot * INDEX_SLOT_SIZE + 8) != 0){
+                    slot = (slot + 1) & (indexSlots - 1);
+                }
+
+                index.putLong(slot * INDEX_SLOT_SIZE, key);
+                index.putInt(slot * INDEX_SLOT_SIZE + 8, record);
+            }
+        }
+    }
+
+    /**
+     * A hash értékhez tartozó rekord sorszáma, vagy -1, ha a blokk nincs a tárolóban.
+     */
+    private int indexFind(byte[] hashBytes){
+        long key = indexKey(hashBytes);
+
+        int slot = indexSlot(key);
+        int record;
+        while ((record = index.getInt(slot * INDEX_SLOT_SIZE + 8)) != 0){
+            if(index.getLong(slot * INDEX_SLOT_SIZE) == key && recordHashEquals(record - 1, hashBytes)){
+                return record - 1;
+            }
+            slot = (slot + 1) & (indexSlots - 1);
+        }
+
+        return -1;
+    }
+
+    private boolean recordHashEquals(int record, byte[] hashBytes){
+        int offset = recordOffset(record);
+
+        for(int i=0; i<32; ++i){
+            if(buffer.get(offset + i) != hashBytes[i]){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void writeCounters(){
+        buffer.putInt(RECORD_COUNT_OFFSET, recordCount);
+        buffer.putInt(CHAIN_HEAD_OFFSET, chainHeadRecord);
+    }
+
+    // ha a következő rekord már nem fér el, a fájlt bővítjük és újból leképezzük
+    private void ensureCapacity() throws IOException {
+        if(recordOffset(recordCount + 1) > buffer.capacity()){
+            long growth = Math.max((long)GROWTH_RECORDS * RECORD_SIZE, buffer.capacity() / 2);
+            map(Math.min(Integer.MAX_VALUE, buffer.capacity() + growth));
+        }
+    }
+
+    private StoredBlock readRecord(int record) throws BlockStoreException {
+        ByteBuffer recordBuffer = buffer.duplicate();
+        recordBuffer.position(recordOffset(record) + 32);
+
+        try {
+            return StoredBlock.deserializeCompact(params, recordBuffer);
+        } catch (ProtocolException e) {
+            throw new BlockStoreException(e);
+        }
+    }
+
+    @Override
+    public synchronized void put(StoredBlock block) throws BlockStoreException {
+        byte[] hashBytes = block.getHeader().getHash().getBytes();
+
+        // a blokkfejek nem változnak, ezért egy már tárolt blokkot nem írunk felül
+        if(indexFind(hashBytes) != -1){
+            return;
+        }
+
+        try {
+            ensureCapacity();
+        } catch (IOException e) {
+            throw new BlockStoreException(e);
+        }
+
+        ByteBuffer recordBuffer = buffer.duplicate();
+        recordBuffer.position(recordOffset(recordCount));
+        recordBuffer.put(hashBytes);
+        block.serializeCompact(recordBuffer);
+
+        // a rekordszámot csak a rekord kiírása után növeljük
+        indexInsert(indexKey(hashBytes), recordCount);
+        recordCount++;
+        writeCounters();
+    }
+
+    @Override
+    public synchronized StoredBlock get(Sha256Hash hash) throws BlockStoreException {
+        int record = indexFind(hash.getBytes());
+
+        if(record == -1){
+            return null;
+        }
+
+        return readRecord(record);
+    }
+
+    @Override
+    public synchronized StoredBlock getChainHead() throws BlockStoreException {
+        return readRecord(chainHeadRecord);
+    }
+
+    @Override
+    public synchronized void setChainHead(StoredBlock chainHead) throws BlockStoreException {
+        byte[] hashBytes = chainHead.getHeader().getHash().getBytes();
+
+        if(indexFind(hashBytes) == -1){
+            put(chainHead);
+        }
+
+        chainHeadRecord = indexFind(hashBytes);
+        writeCounters();
+    }
+
+    /**
+     * A tárolt blokkfejek száma (a mellékláncokon lévőket is beleértve).
+     * @return
+     */
+    public synchronized int size(){
+        return recordCount;
+    }
+
+    @Override
+    public synchronized void close() throws BlockStoreException {
+        try {
+            buffer.force();
+            Utils.unmap(buffer);
+            channel.close();
+            randomAccessFile.close();
+        } catch (IOException e) {
+            throw new BlockStoreException(e);
+        }
+    }
+}
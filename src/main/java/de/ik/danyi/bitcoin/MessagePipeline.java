@@ -0,0 +1,178 @@
+package de.ik.danyi.bitcoin;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A csomópontoktól érkező üzenetek feldolgozási futószalagja. A hálózati szál (NioClientManager) csak
+ * az üzenetek dekódolását végzi, a feldolgozást üzenettípusonként külön feldolgozó szakaszok (stage)
+ * végzik: blokkfejek, blokkok, tranzakciók, inv üzenetek és vezérlő üzenetek. Így egy blokk beépítése
+ * a blokkláncba nem tartja fel a hálózati szálat, sem a többi üzenettípus feldolgozását.
+ *
+ * Minden szakasz egy korlátos sorral és egy saját szállal rendelkezik; egy szakaszon belül az üzenetek
+ * a beérkezés sorrendjében kerülnek feldolgozásra. A szakaszokról a sor hossza és a feldolgozási idő
+ * mérhető.
+ *
+ * A hálózati szál az összes csomópont kapcsolatát kezeli, ezért soha nem várakozhat egy szakasz sorára:
+ * teli sor esetén az offer eldobja a feladatot, a hívó pedig a tartalmat szükség esetén újból lekéri
+ * (blokkfejek, blokkok, tranzakciók), vagy a nem pótolható üzenet (kézfogás) esetén a kapcsolatot lezárja.
+ */
+public class MessagePipeline {
+
+    public static final int HEADERS = 0;
+    public static final int BLOCKS = 1;
+    public static final int TRANSACTIONS = 2;
+    public static final int INVENTORY = 3;
+    public static final int CONTROL = 4;
+
+    private static final String[] NAMES = {"headers", "blocks", "txs", "inv", "control"};
+
+    // a szakaszok sorainak kapacitása (feldolgozásra váró üzenetek)
+    private static final int[] CAPACITIES = {16, 64, 4096, 1024, 256};
+
+    /**
+     * Egy feldolgozó szakasz: korlátos sor és egy feldolgozó szál.
+     */
+    public static class Stage implements Runnable {
+
+        // a feldolgozási idő simított átlagának súlya az új mérésre
+        private static final double ALPHA = 0.1;
+
+        private final String name;
+        private final BlockingQueue<Runnable> queue;
+        private final Thread thread;
+
+        private volatile long processed = 0;
+        private volatile long dropped = 0;
+        private volatile int maxDepth = 0;
+        private volatile double avgServiceTime = 0;
+        private volatile long maxServiceTime = 0;
+
+        private Stage(String name, int capacity){
+            this.name = name;
+            queue = new ArrayBlockingQueue<Runnable>(capacity);
+
+            thread = new Thread(this, "Stage-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * A feladat sorba állítása várakozás nélkül.
+         *
+         * @param task
+         * @return HAMIS, ha a sor megtelt, és a feladatot eldobtuk
+         */
+        public boolean offer(Runnable task){
+            if(!queue.offer(task)){
+                dropped++;
+                return false;
+            }
+
+            int depth = queue.size();
+            if(depth > maxDepth){
+                maxDepth = depth;
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (true){
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                long serviceTime = (System.nanoTime() - start) / 1000L;
+
+                avgServiceTime = processed == 0 ? serviceTime : (1 - ALPHA) * avgServiceTime + ALPHA * serviceTime;
+                maxServiceTime = Math.max(maxServiceTime, serviceTime);
+                processed++;
+            }
+        }
+
+        public String getName(){
+            return name;
+        }
+
+        // a feldolgozásra váró feladatok száma
+        public int getDepth(){
+            return queue.size();
+        }
+
+        // a sorban még elférő feladatok száma
+        public int getRemainingCapacity(){
+            return queue.remainingCapacity();
+        }
+
+        // a teli sor miatt eldobott feladatok száma
+        public long getDropped(){
+            return dropped;
+        }
+
+        public int getMaxDepth(){
+            return maxDepth;
+        }
+
+        public long getProcessed(){
+            return processed;
+        }
+
+        // a feldolgozási idő simított átlaga (mikroszekundum)
+        public double getAverageServiceTime(){
+            return avgServiceTime;
+        }
+
+        public long getMaxServiceTime(){
+            return maxServiceTime;
+        }
+
+        @Override
+        public String toString(){
+            return String.format("%s: sor %d (max %d), feldolgozva %d, eldobva %d, átlag %.2f ms (max %.2f ms)",
+                    name, getDepth(), maxDepth, processed, dropped, avgServiceTime / 1000, maxServiceTime / 1000.0);
+        }
+    }
+
+    private final Stage[] stages;
+
+    public MessagePipeline(){
+        stages = new Stage[NAMES.length];
+        for(int i=0; i<NAMES.length; ++i){
+            stages[i] = new Stage(NAMES[i], CAPACITIES[i]);
+        }
+    }
+
+    /**
+     * A feladat átadása az adott szakasznak várakozás nélkül.
+     *
+     * @param stage HEADERS, BLOCKS, TRANSACTIONS, INVENTORY vagy CONTROL
+     * @param task
+     * @return HAMIS, ha a szakasz sora megtelt, és a feladatot eldobtuk
+     */
+    public boolean offer(int stage, Runnable task){
+        return stages[stage].offer(task);
+    }
+
+    public Stage getStage(int stage){
+        return stages[stage];
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder sb = new StringBuilder("Üzenetfeldolgozás:");
+        for(Stage stage: stages){
+            sb.append("\n  ").append(stage);
+        }
+        return sb.toString();
+    }
+}
@@ -1,255 +1,975 @@
-package de.ik.danyi.bitcoin;
-
-import org.bitcoinj.core.*;
-import org.bitcoinj.net.NioClient;
-
-import javax.swing.*;
-import java.io.IOException;
-import java.net.ConnectException;
-import java.net.InetSocketAddress;
-import java.util.List;
-
-/**
- * Created by Imre Danyi on 2015.04.19..
- */
-public class Node extends PeerSocketHandler {
-
-    private NioClient client;
-    private InetSocketAddress socketAddress;
-
-    // a csomóponttal még kapcsolatban vagyunk-e
-    private boolean connected = false;
-
-    // a csomópont által birtokolt blokklánc hossza
-    private long bestHeight = 0;
-
-    // a függőben lévő lekérés nyilvántartásához
-    private de.ik.danyi.bitcoin.Utils.Pending pending = null;
-
-    // a blokkfejlécek szinkronizálása ezzel a csomóponttal megtörtént
-    private boolean syncIsFinished = false;
-
-    // megtörtént-e már a kézfogás
-    public boolean waitForHandshake = true;
-
-    public Node(NetworkParameters params, InetSocketAddress socketAddress) {
-        super(params, socketAddress);
-
-        try {
-            client = new NioClient(socketAddress, this, 10000);
-            this.socketAddress = socketAddress;
-
-        } catch (ConnectException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    public boolean isConnected(){
-        return connected;
-    }
-
-    /**
-     * Rendelkezünk-e mindazon blokkfejekkel, amelyekkel ezen csomópont is.
-     */
-    public void syncIsFinished(){
-        syncIsFinished = true;
-    }
-
-    public boolean isSyncIsFinished(){
-        return syncIsFinished;
-    }
-
-    public InetSocketAddress getSocketAddress() {
-        return socketAddress;
-    }
-
-    public long getBestHeight(){
-        return bestHeight;
-    }
-
-    /**
-     * A csomópontoktól érkező üzenetek itt kerülnek feldolgozásra.
-     * @param message
-     * @throws Exception
-     */
-    @Override
-    protected void processMessage(Message message) throws Exception {
-
-        // a kézfogás sikeresen megtörtént
-        if (message instanceof VersionAck) {
-            waitForHandshake = false;
-            System.out.println(String.format("A kézfogás megtörtént. (%s)", socketAddress));
-
-            App.nm.regNode(this);
-            App.nm.connectANewNode();
-        }
-        else if (message instanceof VersionMessage){
-            waitForHandshake = false;
-            VersionMessage versionMessage = (VersionMessage) message;
-
-            bestHeight = versionMessage.bestHeight;
-        }
-        // a csomópont további csomópontok listáját küldte el
-        else if(message instanceof AddressMessage){
-            AddressMessage addressMessage = (AddressMessage)message;
-            App.nm.regAvailableNodes(addressMessage.getAddresses());
-        }
-        else if(message instanceof Ping){
-            Ping ping = (Ping)message;
-
-            if (ping.hasNonce()) {
-                long nonce = ping.getNonce();
-                // a csomóponttal érkező ping üzenetre egy pong üzenettel válaszolunk
-                Pong pong = new Pong(nonce);
-                sendMessage(pong);
-            }
-        }
-        else if(message instanceof HeadersMessage){
-            HeadersMessage headersMessage = (HeadersMessage)message;
-
-            // a csomópont függő kérésének vizsgálatához csak az első blokkra van szükség
-            List<Block> headers = headersMessage.getBlockHeaders();
-            Block first = headers.get(0);
-
-            // a csomóponttól lekért tranzakció megérkezett
-            if(pending != null && pending.isReceived(first.getPrevBlockHash())){
-                removePending();
-            }
-
-            // a csomóponttól kapott blokkfejeket rögzítjük
-            App.bm.regMissingBlockHeaders(headers);
-        }
-        else if(message instanceof Transaction){
-            Transaction transaction = (Transaction)message;
-
-            // a csomóponttól lekért tranzakció megérkezett
-            if(pending != null && pending.isReceived(transaction.getHash())){
-                TransactionManager.txHashes.queryIsDone(transaction.getHash());
-                removePending();
-            }
-
-            // a kapott tranzakciót megvizsgáljuk, hogy számunkra releváns-e
-            TransactionManager.addTxForFilter(transaction);
-        }
-        else if(message instanceof Block) {
-            final Block block = (Block)message;
-
-            // a csomóponttól lekért blokk megérkezett
-            if(pending != null && pending.isReceived(block.getHash())){
-                App.bm.blockHashes.queryIsDone(block.getHash());
-                removePending();
-            }
-
-            // minden kapott blokkot felhasználunk az elkölthető és az elköltött kimenetek
-            // beágyazottságának vizsgálatához
-            TransactionManager.addBlockForConfirmation(block);
-
-            // a beérkező blokkot hozzáadjuk a blokklánchoz
-            boolean isAdded = App.bm.addBlock(block);
-            System.out.println(String.format("%s blokk hozzáadva a blokklánchoz: %b",
-                    block.getHashAsString(), isAdded));
-
-            // ha ez nem sikerült, az azt jelentheti, hogy a blokkláncunk folyamatossága megszakadt;
-            // valószínűleg egy kapcsolatmegszakadás és kapcsolatfelvétel közötti átmeneti időben létrejött
-            // egy új blokk, amely nem került beépítésre, ezért a blokkláncot újból szinkronizálni kell
-            if(!isAdded){
-
-                // ha a beérkező blokk nem a blokkláncunk következő blokkja
-                Sha256Hash chainHeadHash = App.bm.getBlockHash(App.bm.blockChain.getChainHead());
-                if(!block.getPrevBlockHash().equals(chainHeadHash)) {
-
-                    System.out.println(String.format(
-                            "A blokkláncot újból szinkronizálnunk kell. Blockchain: %d, BestHeaders: %d",
-                            App.bm.blockChain.getBestChainHeight(), App.bm.bestHeaders.size()-1));
-
-                    GetHeadersMessage getHeaders = App.bm.getMissingBlockHeaders();
-                    if (getHeaders != null) {
-                        sendMessage(getHeaders);
-                    }
-                }
-            }
-        }
-        // a hálózaton szétterjedő tranzakciók, blokkok hash értékeit tartalmazó üzenet
-        else if (message instanceof InventoryMessage) {
-            InventoryMessage msg = (InventoryMessage) message;
-
-            List<InventoryItem> items = msg.getItems();
-
-            for (InventoryItem item : items) {
-
-                Sha256Hash itemHash = item.hash;
-
-                if(item.type.equals(InventoryItem.Type.Transaction)){
-                    TransactionManager.addTxHash(itemHash);
-                }
-                else if(item.type.equals(InventoryItem.Type.Block)){
-                    App.bm.addBlockHash(itemHash);
-                }
-            }
-        }
-        // visszautasítás esetén beérkező üzenet
-        else if(message instanceof RejectMessage){
-            RejectMessage msg = (RejectMessage)message;
-            final String reason = msg.getReasonString();
-            final RejectMessage.RejectCode reasonCode = msg.getReasonCode();
-
-            // ha egy általunk létrehozott tranzakció nem került a csomópont által elfogadásra
-            if(msg.getRejectedMessage().equals("tx")){
-                final Sha256Hash rejectedTxHash = msg.getRejectedObjectHash();
-
-                SwingUtilities.invokeLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        App.ui.showMessageForUser(
-                                String.format("Tranzakció: %s\nvisszautasításra került.\nHiba oka: %s: %s",
-                                        rejectedTxHash, reasonCode.name(), reason),
-                                "Visszautasított tranzakció!", true);
-                    }
-                });
-
-                // ha általunk létrehozott tranzakció került elutasításra, az abban
-                // elköltött kimenetek nem kerültek elköltésre
-                TransactionManager.resetSpentOuts(rejectedTxHash);
-            }
-        }
-
-    }
-
-    @Override
-    public void connectionClosed() {
-        System.out.println("A TCP kapcsolat megszakadt (" + socketAddress + ").");
-
-        connected = false;
-        App.nm.connectANewNode();
-    }
-
-    // a TCP kapcsolat a csomóponttal felépült
-    @Override
-    public void connectionOpened() {
-        System.out.println("A TCP kapcsolat kiépült ("+socketAddress+").");
-
-        connected = true;
-        handshake();
-    }
-
-    // a csomópontokkal történő kézfogás egy version üzenet elküldésével indul el
-    private void handshake() {
-        VersionMessage message = new VersionMessage(App.netParams, App.bm.blockChain.getBestChainHeight());
-        message.appendToSubVer("Bitcoin tárcaprogram", "0.1", null);
-        sendMessage(message);
-    }
-
-    public void setPending(Utils.Pending pending){
-        this.pending = pending;
-    }
-
-    public Utils.Pending getPending(){
-        return pending;
-    }
-
-    public void removePending(){
-        pending = null;
-    }
-}
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.*;
+import org.bitcoinj.net.ClientConnectionManager;
+import org.bitcoinj.net.MessageWriteTarget;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Egy csomóponttal folytatott kommunikáció (protokollkezelő). A csomópont kapcsolatát a NodeManager
+ * közös NioClientManager példánya kezeli, így a csomópontok számával nem nő a szálak száma. A beérkező
+ * üzenetek feldolgozása a hálózati szál helyett a MessagePipeline szakaszaiban történik.
+ *
+ * Created by Imre Danyi on 2015.04.19..
+ */
+public class Node extends PeerSocketHandler {
+
+    /**
+     * A csomópont állapota: kapcsolódás, kézfogás, lekérdezésre kész, lezárt kapcsolat.
+     */
+    public enum State {
+        CONNECTING, HANDSHAKING, READY, CLOSED
+    }
+
+    private InetSocketAddress socketAddress;
+
+    // a csomópont állapota; az állapotátmenetek atomiak, mivel a hálózati szálakról és a NodeManager
+    // szálából is történhetnek
+    private final AtomicReference<State> state = new AtomicReference<State>(State.CONNECTING);
+
+    // a csomópont által birtokolt blokklánc hossza
+    private volatile long bestHeight = 0;
+
+    // a függőben lévő blokkfej-lekérés (getheaders) nyilvántartásához
+    private volatile Utils.Pending headersQuery = null;
+
+    // a csomóponttól lekért, még be nem érkezett tranzakciók és blokkok (hash -> lekérés); egyszerre
+    // több lekérés is függőben lehet, így a csomópont a válaszokat egymás után, várakozás nélkül küldheti
+    private final Map<Sha256Hash, Utils.Pending> inFlight = new LinkedHashMap<Sha256Hash, Utils.Pending>();
+
+    // a csomópont válaszidejének becslése lekérés típusonként (tranzakció, blokk, blokkfejek), amelyből
+    // a lekérések időkorlátja adódik
+    private final RttEstimator[] rttEstimators = { new RttEstimator(), new RttEstimator(), new RttEstimator() };
+
+    // a legutóbb beérkezett lekért tartalom ideje (System.nanoTime)
+    private long lastReceiveTime = 0;
+
+    // a csomópont teljesítményének statisztikái (válaszidő, átviteli sebesség, időtúllépések, ping)
+    private final NodeStats stats = new NodeStats();
+
+    // a legutóbb elküldött ping üzenet azonosítója és ideje (System.nanoTime)
+    private volatile long pingNonce = 0;
+    private volatile long pingTime = 0;
+
+    // a kapcsolódás kezdete (System.nanoTime), valamint a kézfogásig eltelt idő (ms), ha az megtörtént
+    private volatile long connectTime = 0;
+    private volatile long handshakeLatency = -1;
+
+    // a kapcsolódást visszavontuk, mert a párhuzamosan kapcsolódó csomópontok közül mások előbb
+    // végezték el a kézfogást (lásd NodeManager.connectNewNodes)
+    private volatile boolean cancelled = false;
+
+    // a blokkfejlécek szinkronizálása ezzel a csomóponttal megtörtént
+    private volatile boolean syncIsFinished = false;
+
+    // a BIP37 Bloom-szűrők támogatását jelző szolgáltatásbit (NODE_BLOOM, BIP111)
+    public static final long NODE_BLOOM = 1 << 2;
+
+    // a csomópont támogatja-e a BIP37 Bloom-szűrőket
+    private volatile boolean bloomFilteringSupported = false;
+
+    // a csomópontnak legutóbb elküldött Bloom-szűrő azonosítója (lásd AddressManager.getFilterTag)
+    private volatile long filterTag = BlockCache.FULL_BLOCK;
+
+    // a beérkezett szűrt blokk (merkleblock), amelyhez a csomópont a szűrőnknek megfelelő
+    // tranzakciókat külön tx üzenetekben küldi el
+    private FilteredBlock filteredBlock = null;
+    // a szűrt blokkot mi kértük-e le a csomóponttól
+    private boolean filteredBlockRequested = false;
+
+    public Node(NetworkParameters params, InetSocketAddress socketAddress) {
+        super(params, socketAddress);
+
+        this.socketAddress = socketAddress;
+    }
+
+    /**
+     * Kapcsolódás a csomóponthoz a közös kapcsolatkezelőn keresztül. Ha a kapcsolat a megadott időn belül
+     * nem épül fel, a kapcsolódást sikertelennek tekintjük (lásd timeoutOccurred).
+     *
+     * @param connectionManager
+     * @param connectTimeout (ms)
+     */
+    public void connect(ClientConnectionManager connectionManager, int connectTimeout){
+        setSocketTimeout(connectTimeout);
+        setTimeoutEnabled(true);
+
+        connectTime = System.nanoTime();
+
+        connectionManager.openConnection(socketAddress, this);
+    }
+
+    @Override
+    protected void timeoutOccurred() {
+        // a kapcsolat nem épült fel időben; a később esetleg mégis felépülő kapcsolatot a close lezárja
+        if(state.get() == State.CONNECTING){
+            System.out.println("A TCP kapcsolat nem épült fel időben (" + socketAddress + ").");
+            close();
+            connectionClosed();
+            return;
+        }
+
+        super.timeoutOccurred();
+    }
+
+    public State getState(){
+        return state.get();
+    }
+
+    /**
+     * A kézfogás befejezése: a csomópont lekérdezhetővé válik. Csak a NodeManager hívja (lásd admitNode).
+     *
+     * @return false, ha a csomópont már nincs kézfogás állapotban
+     */
+    public boolean setReady(){
+        return state.compareAndSet(State.HANDSHAKING, State.READY);
+    }
+
+    /**
+     * A kapcsolódás visszavonása (a csomópont a kapcsolódási versenyt elvesztette). A még fel nem
+     * épült TCP kapcsolat helyét azonnal felszabadítjuk; a később mégis felépülő kapcsolatot a close lezárja.
+     */
+    public void cancel(){
+        cancelled = true;
+        close();
+
+        if(state.get() == State.CONNECTING){
+            connectionClosed();
+        }
+    }
+
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+    /**
+     * A kapcsolódástól a kézfogásig eltelt idő (ms), vagy -1, ha a kézfogás nem történt meg.
+     *
+     * @return
+     */
+    public long getHandshakeLatency(){
+        return handshakeLatency;
+    }
+
+    // a csomóponttal még kapcsolatban vagyunk-e
+    public boolean isConnected(){
+        State current = state.get();
+        return current == State.HANDSHAKING || current == State.READY;
+    }
+
+    // megtörtént-e már a kézfogás, és a kapcsolat még él
+    public boolean isReady(){
+        return state.get() == State.READY;
+    }
+
+    /**
+     * Rendelkezünk-e mindazon blokkfejekkel, amelyekkel ezen csomópont is.
+     */
+    public void syncIsFinished(){
+        syncIsFinished = true;
+    }
+
+    public void syncIsNotFinished(){
+        syncIsFinished = false;
+    }
+
+    public boolean isSyncIsFinished(){
+        return syncIsFinished;
+    }
+
+    public InetSocketAddress getSocketAddress() {
+        return socketAddress;
+    }
+
+    public long getBestHeight(){
+        return bestHeight;
+    }
+
+    public boolean isBloomFilteringSupported(){
+        return bloomFilteringSupported;
+    }
+
+    /**
+     * A csomópont a version üzenetében jelzi-e a Bloom-szűrők támogatását (NODE_BLOOM). A bitcoinj
+     * isBloomFilteringSupported metódusa csak a protokollverziót vizsgálja, a szűrést letiltó
+     * csomópontok viszont ennél újabb verziót is jelezhetnek.
+     *
+     * @param versionMessage
+     * @return
+     */
+    static boolean supportsBloomFiltering(VersionMessage versionMessage){
+        return (versionMessage.localServices & NODE_BLOOM) != 0;
+    }
+
+    public long getFilterTag(){
+        return filterTag;
+    }
+
+    public NodeStats getStats(){
+        return stats;
+    }
+
+    /**
+     * Ping üzenet küldése a hálózati körülfordulási idő méréséhez; a választ (pong) a processMessage
+     * dolgozza fel.
+     */
+    public void ping(){
+        pingNonce = (long)(Math.random() * Long.MAX_VALUE);
+        pingTime = System.nanoTime();
+        sendMessage(new Ping(pingNonce));
+    }
+
+    /**
+     * A legutóbbi ping üzenet óta eltelt idő (ms).
+     *
+     * @return
+     */
+    public long getTimeSinceLastPing(){
+        return pingTime == 0 ? Long.MAX_VALUE : (System.nanoTime() - pingTime) / 1000000L;
+    }
+
+    // a csomóponttól érkező bájtokat a statisztikákhoz megszámoljuk
+    @Override
+    public int receiveBytes(ByteBuffer buff) {
+        int start = buff.position();
+        int result = super.receiveBytes(buff);
+        stats.recordBytes(buff.position() - start);
+        return result;
+    }
+
+    /**
+     * Már szerializált (fejléccel és ellenőrzőösszeggel ellátott) üzenet küldése; a körüzenetek
+     * (lásd NodeManager.sendMsgToAllNodes) így csak egyszer kerülnek szerializálásra.
+     *
+     * @param bytes
+     * @return HAMIS, ha az üzenetet nem sikerült a kapcsolat írási sorába tenni
+     */
+    public boolean sendBytes(byte[] bytes){
+        MessageWriteTarget target = writeTarget;
+        if(target == null || !isConnected()){
+            return false;
+        }
+
+        try {
+            target.writeBytes(bytes);
+            return true;
+        } catch (IOException e) {
+            System.out.println(String.format("Az üzenet küldése nem sikerült (%s): %s", socketAddress, e.getMessage()));
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * A címeink alapján előállított Bloom-szűrőt (filterload) elküldjük a csomópontnak; ezután a
+     * csomópont csak a szűrőnek megfelelő tranzakciókat továbbítja. Csak a NODE_BLOOM szolgáltatást
+     * jelző csomópontnak küldjük el.
+     */
+    public void sendBloomFilter(){
+        if(!bloomFilteringSupported){
+            return;
+        }
+
+        filterTag = App.am.getFilterTag();
+        sendMessage(App.am.createBloomFilter());
+    }
+
+    /**
+     * A csomópontoktól érkező üzenetek itt kerülnek feldolgozásra. A metódus a hálózati szálon fut (amely
+     * az összes csomópont kapcsolatát kezeli), ezért soha nem várakozhat, és csak a sorrendfüggő és rövid
+     * lépéseket végzi el (ping-pong, a lekérések párosítása, a szűrt blokk
+     * összeállítása); a feldolgozás többi része a MessagePipeline üzenettípus szerinti szakaszaiban történik.
+     *
+     * @param message
+     * @throws Exception
+     */
+    @Override
+    protected void processMessage(Message message) throws Exception {
+
+        // a szűrt blokkhoz tartozó tranzakciók a merkleblock üzenet után közvetlenül érkeznek;
+        // bármely más üzenet a szűrt blokk végét jelenti
+        if(filteredBlock != null && !(message instanceof Transaction)){
+            completeFilteredBlock();
+        }
+
+        // a ping és pong üzeneteket azonnal kezeljük, hogy a válasz, illetve a mért RTT
+        // ne függjön a feldolgozó szakaszok terhelésétől
+        if(message instanceof Ping){
+            Ping ping = (Ping)message;
+
+            if (ping.hasNonce()) {
+                long nonce = ping.getNonce();
+                // a csomóponttal érkező ping üzenetre egy pong üzenettel válaszolunk
+                Pong pong = new Pong(nonce);
+                sendMessage(pong);
+            }
+        }
+        // a ping üzenetünkre érkezett válasz
+        else if(message instanceof Pong){
+            Pong pong = (Pong)message;
+
+            if(pingTime != 0 && pong.getNonce() == pingNonce){
+                stats.recordPing((System.nanoTime() - pingTime) / 1000000L);
+            }
+        }
+        else if(message instanceof HeadersMessage){
+            final HeadersMessage headersMessage = (HeadersMessage)message;
+
+            boolean queued = offer(MessagePipeline.HEADERS, new Runnable() {
+                @Override
+                public void run() {
+                    processHeaders(headersMessage);
+                }
+            });
+
+            // teli sor esetén a blokkfejeket eldobjuk, és a tartományt (akár más csomóponttól) újból lekérjük
+            if(!queued){
+                Utils.Pending query = removeHeadersQuery();
+                if(query != null){
+                    System.out.println(String.format("A blokkfejek sora megtelt, a blokkfejeket újból lekérjük. (%s)",
+                            socketAddress));
+                    App.bm.headersQueryFailed(query.getHash());
+                }
+            }
+        }
+        else if(message instanceof Transaction){
+            final Transaction transaction = (Transaction)message;
+
+            // a csomóponttól lekért tranzakció megérkezett
+            final boolean requested = completeInFlight(transaction.getHash());
+
+            // a szűrt blokkba foglalt tranzakció
+            if(filteredBlock != null && filteredBlock.provideTransaction(transaction)){
+                if(filteredBlock.getAssociatedTransactions().size() == filteredBlock.getTransactionHashes().size()){
+                    completeFilteredBlock();
+                }
+            }
+
+            // teli sor esetén a tranzakciót eldobjuk; ha lekértük, később újból lekérjük
+            boolean queued = offer(MessagePipeline.TRANSACTIONS, new Runnable() {
+                @Override
+                public void run() {
+                    // a kapott tranzakciót megvizsgáljuk, hogy számunkra releváns-e
+                    boolean accepted = TransactionManager.addTxForFilter(transaction);
+
+                    if(requested){
+                        if(accepted){
+                            TransactionManager.txHashes.queryIsDone(transaction.getHash());
+                        }else{
+                            TransactionManager.txHashes.queryIsFailed(transaction.getHash());
+                        }
+                    }
+                }
+            });
+            if(!queued && requested){
+                TransactionManager.txHashes.queryIsFailed(transaction.getHash());
+            }
+        }
+        else if(message instanceof FilteredBlock){
+            final FilteredBlock filteredBlock = (FilteredBlock)message;
+            final Block header = filteredBlock.getBlockHeader();
+
+            // a blokkfej, valamint a részleges Merkle-fa alapján a tranzakciók blokkba foglalásának ellenőrzése;
+            // a szűrt blokk összeállításához a tranzakciók hash értékeire itt is szükség van
+            try {
+                header.verifyHeader();
+                filteredBlock.getTransactionHashes();
+            } catch (VerificationException e) {
+                System.out.println(String.format("A kapott szűrt blokk (%s) nem érvényes: %s",
+                        filteredBlock.getHash(), e.getMessage()));
+
+                if(completeInFlight(filteredBlock.getHash())){
+                    App.bm.blockHashes.queryIsFailed(filteredBlock.getHash());
+                }
+                return;
+            }
+
+            // a csomóponttól lekért blokk megérkezett
+            final boolean requested = completeInFlight(filteredBlock.getHash());
+
+            // teli sor esetén a szűrt blokkot (a hozzá érkező tranzakciókkal együtt) eldobjuk;
+            // ha lekértük, később újból lekérjük
+            boolean queued = offer(MessagePipeline.BLOCKS, new Runnable() {
+                @Override
+                public void run() {
+                    addToBlockChain(header);
+                }
+            });
+            if(!queued){
+                if(requested){
+                    App.bm.blockHashes.queryIsFailed(filteredBlock.getHash());
+                }
+                return;
+            }
+
+            // a lekérés csak a tranzakciók átadásakor (completeFilteredBlock) teljesül, így annak
+            // sikertelensége ugyanazon a szálon jelezhető, amelyen a lekérést teljesítenénk
+            this.filteredBlock = filteredBlock;
+            this.filteredBlockRequested = requested;
+            if(filteredBlock.getTransactionHashes().isEmpty()){
+                completeFilteredBlock();
+            }
+        }
+        else if(message instanceof Block) {
+            final Block block = (Block)message;
+
+            // a csomóponttól lekért blokk megérkezett
+            final boolean requested = completeInFlight(block.getHash());
+
+            // teli sor esetén a blokkot eldobjuk; ha lekértük, később újból lekérjük
+            boolean queued = offer(MessagePipeline.BLOCKS, new Runnable() {
+                @Override
+                public void run() {
+                    processBlock(block, requested);
+                }
+            });
+            if(!queued && requested){
+                App.bm.blockHashes.queryIsFailed(block.getHash());
+            }
+        }
+        // a hálózaton szétterjedő tranzakciók, blokkok hash értékeit tartalmazó üzenet
+        else if (message instanceof InventoryMessage) {
+            final InventoryMessage inventoryMessage = (InventoryMessage) message;
+
+            // teli sor esetén az inv üzenetet eldobjuk; a tartalmakat a többi csomópont is bejelenti
+            offer(MessagePipeline.INVENTORY, new Runnable() {
+                @Override
+                public void run() {
+                    processInventory(inventoryMessage);
+                }
+            });
+        }
+        else {
+            final Message controlMessage = message;
+
+            boolean queued = offer(MessagePipeline.CONTROL, new Runnable() {
+                @Override
+                public void run() {
+                    processControl(controlMessage);
+                }
+            });
+
+            // teli sor esetén a címeket és a visszautasításokat eldobjuk; a kézfogás üzenetei viszont nem
+            // kérhetők le újból, ezért ekkor a kapcsolatot lezárjuk (a helyét más csomópont kapja meg)
+            if(!queued && (message instanceof VersionMessage || message instanceof VersionAck)){
+                System.out.println(String.format("A vezérlő üzenetek sora megtelt, a kapcsolatot lezárjuk. (%s)",
+                        socketAddress));
+                close();
+            }
+        }
+    }
+
+    // a feldolgozás átadása a megfelelő szakasznak várakozás nélkül (teli sor esetén a feladatot eldobjuk)
+    private boolean offer(int stage, Runnable task){
+        return App.nm.getPipeline().offer(stage, task);
+    }
+
+    // a blokkfejek feldolgozása (a blokkfejek szakaszán)
+    private void processHeaders(HeadersMessage headersMessage){
+        List<Block> headers = headersMessage.getBlockHeaders();
+        Sha256Hash requestedHash = headersQuery != null ? headersQuery.getHash() : null;
+
+        // a csomópont nem ismer további blokkfejeket; a tartományt más csomópont kaphatja meg
+        if(headers.isEmpty()){
+            if(requestedHash != null){
+                App.bm.headersQueryFailed(requestedHash);
+                completeHeadersQuery();
+                syncIsFinished();
+            }
+            return;
+        }
+
+        // a csomóponttól lekért blokkfejek megérkeztek
+        if(requestedHash != null){
+            completeHeadersQuery();
+        }
+
+        blockAnnounced(headers.get(headers.size() - 1).getHash());
+
+        // a csomóponttól kapott blokkfejeket rögzítjük; érvénytelen adag esetén a tartományt
+        // más csomópont kaphatja meg
+        if(!App.bm.regMissingBlockHeaders(headers, this) && requestedHash != null){
+            App.bm.headersQueryFailed(requestedHash);
+        }
+    }
+
+    // a teljes blokk feldolgozása (a blokkok szakaszán)
+    private void processBlock(Block block, boolean requested){
+
+        // a blokk érvényes-e: munkabizonyíték és időbélyeg ellenőrzése, valamint, hogy a blokkfejlécben
+        // tárolt Merkle-gyökér megfelel-e a befoglalt tranzakcióknak
+        try {
+            block.verify();
+        } catch (VerificationException e) {
+            System.out.println(String.format("A kapott blokk (%s) nem érvényes.", block.getHashAsString()));
+            System.out.println(e.getMessage());
+
+            // ha jelez hibát, többnyire "Block too far in future" hibát jelez, amelynek az az oka,
+            // hogy a gépünk rendszerideje nem megfelelő (https://bitcointalk.org/index.php?topic=947502)
+
+            // ilyenkor a blokk tartalmát újból lekérdezzük
+            if(requested){
+                App.bm.blockHashes.queryIsFailed(block.getHash());
+            }
+            return;
+        }
+
+        // minden kapott blokkot felhasználunk az elkölthető és az elköltött kimenetek
+        // beágyazottságának vizsgálatához; csak az általunk lekért blokkokat tároljuk el, hogy később ne
+        // kelljen újból letölteni (a továbbított új blokkok a gyorsítótárat nem tölthetik meg); ha a
+        // feldolgozásra váró blokkok sora megtelt, a lekért blokkot később a gyorsítótárból szolgáljuk ki
+        BlockTransactions blockTransactions = new BlockTransactions(block);
+        if(requested){
+            App.bm.cacheBlock(blockTransactions, BlockCache.FULL_BLOCK);
+        }
+        boolean accepted = TransactionManager.addBlockForConfirmation(blockTransactions);
+
+        if(requested){
+            if(accepted){
+                App.bm.blockHashes.queryIsDone(block.getHash());
+            }else{
+                App.bm.blockHashes.queryIsFailed(block.getHash());
+            }
+        }
+
+        addToBlockChain(block);
+    }
+
+    // az inv üzenet feldolgozása (az inv szakaszon)
+    private void processInventory(InventoryMessage msg){
+        List<InventoryItem> items = msg.getItems();
+
+        for (InventoryItem item : items) {
+
+            Sha256Hash itemHash = item.hash;
+
+            if(item.type.equals(InventoryItem.Type.Transaction)){
+                TransactionManager.addTxHash(itemHash);
+            }
+            else if(item.type.equals(InventoryItem.Type.Block)){
+                blockAnnounced(itemHash);
+                App.bm.addBlockHash(itemHash);
+            }
+        }
+    }
+
+    // a vezérlő üzenetek (kézfogás, címek, visszautasítás) feldolgozása (a vezérlő szakaszon)
+    private void processControl(Message message){
+
+        // a kézfogás sikeresen megtörtént
+        if (message instanceof VersionAck) {
+            if(state.get() != State.HANDSHAKING){
+                return;
+            }
+            handshakeLatency = (System.nanoTime() - connectTime) / 1000000L;
+            System.out.println(String.format("A kézfogás megtörtént. (%s)", socketAddress));
+
+            // ha közben a többi csomóponttal betelt a csomóponthelyek száma, a kapcsolatot lezárjuk
+            if(!App.nm.admitNode(this)){
+                return;
+            }
+
+            sendBloomFilter();
+        }
+        else if (message instanceof VersionMessage){
+            VersionMessage versionMessage = (VersionMessage) message;
+
+            bestHeight = versionMessage.bestHeight;
+            bloomFilteringSupported = supportsBloomFiltering(versionMessage);
+        }
+        // a csomópont további csomópontok listáját küldte el
+        else if(message instanceof AddressMessage){
+            AddressMessage addressMessage = (AddressMessage)message;
+            App.nm.regAvailableNodes(addressMessage.getAddresses());
+        }
+        // visszautasítás esetén beérkező üzenet
+        else if(message instanceof RejectMessage){
+            RejectMessage msg = (RejectMessage)message;
+            final String reason = msg.getReasonString();
+            final RejectMessage.RejectCode reasonCode = msg.getReasonCode();
+
+            // ha egy általunk létrehozott tranzakció nem került a csomópont által elfogadásra
+            if(msg.getRejectedMessage().equals("tx")){
+                final Sha256Hash rejectedTxHash = msg.getRejectedObjectHash();
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        App.ui.showMessageForUser(
+                                String.format("Tranzakció: %s\nvisszautasításra került.\nHiba oka: %s: %s",
+                                        rejectedTxHash, reasonCode.name(), reason),
+                                "Visszautasított tranzakció!", true);
+                    }
+                });
+
+                // ha általunk létrehozott tranzakció került elutasításra, az abban
+                // elköltött kimenetek nem kerültek elköltésre
+                TransactionManager.resetSpentOuts(rejectedTxHash);
+            }
+        }
+    }
+
+    /**
+     * A csomópont egy blokkot jelentett be (inv, headers vagy block üzenetben). A version üzenetben kapott
+     * magasság a kapcsolat során elavul; ha a bejelentett blokk nincs a fő láncunkban, a csomópont a
+     * láncunknál hosszabb láncot ismer, így a blokkfejek utolsó tartománya (tail, lásd
+     * HeaderSyncScheduler.assign) a kezdeti szinkronizáció után is kiosztható neki. Ha a szinkronizáció
+     * még folyamatban van, a csomóponttól újból lekérjük a hiányzó blokkfejeket.
+     *
+     * @param blockHash
+     */
+    private void blockAnnounced(Sha256Hash blockHash){
+        if(App.bm.isBlockInBestChain(blockHash)){
+            return;
+        }
+
+        long announcedHeight = App.bm.blockChain.getBestChainHeight() + 1;
+        if(announcedHeight > bestHeight){
+            bestHeight = announcedHeight;
+
+            if(isSyncIsFinished()){
+                syncIsNotFinished();
+                wakeUpNodeManager();
+            }
+        }
+    }
+
+    /**
+     * A beérkező (teljes vagy szűrt) blokk fejlécét hozzáadjuk a blokklánchoz.
+     *
+     * @param block
+     */
+    private void addToBlockChain(Block block){
+        boolean isAdded = App.bm.addBlock(block);
+        System.out.println(String.format("%s blokk hozzáadva a blokklánchoz: %b",
+                block.getHashAsString(), isAdded));
+
+        // a csomópont ismeri a blokkláncunk legújabb blokkját
+        if(isAdded){
+            bestHeight = Math.max(bestHeight, App.bm.blockChain.getBestChainHeight());
+        }
+
+        // ha ez nem sikerült, az azt jelentheti, hogy a blokkláncunk folyamatossága megszakadt;
+        // valószínűleg egy kapcsolatmegszakadás és kapcsolatfelvétel közötti átmeneti időben létrejött
+        // egy új blokk, amely nem került beépítésre, ezért a blokkláncot újból szinkronizálni kell
+        if(!isAdded){
+
+            // ha a beérkező blokk nem a blokkláncunk következő blokkja
+            Sha256Hash chainHeadHash = App.bm.getBlockHash(App.bm.blockChain.getChainHead());
+            if(!block.getPrevBlockHash().equals(chainHeadHash)) {
+
+                System.out.println(String.format(
+                        "A blokkláncot újból szinkronizálnunk kell. Blockchain: %d, BestChainIndex: %d",
+                        App.bm.blockChain.getBestChainHeight(), App.bm.getBestChainIndexHeight()));
+
+                blockAnnounced(block.getHash());
+                GetHeadersMessage getHeaders = headersQuery == null ? App.bm.getMissingBlockHeaders(bestHeight) : null;
+                if (getHeaders != null) {
+                    setHeadersQuery(new Utils.Pending(getHeaders.getLocator().get(0), Utils.Pending.HEADERS));
+                    sendMessage(getHeaders);
+                }
+            }
+        }
+    }
+
+    /**
+     * A szűrt blokk és a hozzá érkezett tranzakciók alapján frissítjük a kimenetek beágyazottságát
+     * (a blokkok szakaszán). A hálózati szálon csak a szűrt blokkot adjuk át; a tárca tranzakcióinak
+     * bejárása és a blokk összeállítása már a szakasz szálán történik.
+     */
+    private void completeFilteredBlock(){
+        final FilteredBlock completedBlock = filteredBlock;
+        final long tag = filterTag;
+        final boolean requested = filteredBlockRequested;
+        filteredBlock = null;
+        filteredBlockRequested = false;
+
+        // teli sor esetén a szűrt blokkot eldobjuk; ha lekértük, később újból lekérjük
+        boolean queued = offer(MessagePipeline.BLOCKS, new Runnable() {
+            @Override
+            public void run() {
+                BlockTransactions blockTransactions =
+                        new BlockTransactions(completedBlock, TransactionManager.getWalletTransactions());
+                App.bm.cacheBlock(blockTransactions, tag);
+
+                // ha a feldolgozásra váró blokkok sora megtelt, a blokkot később a gyorsítótárból szolgáljuk ki
+                // (a nem általunk lekért, pl. ismételt lekérésre érkezett másolat a lekérés állapotát nem módosítja)
+                boolean accepted = TransactionManager.addBlockForConfirmation(blockTransactions);
+
+                if(requested){
+                    if(accepted){
+                        App.bm.blockHashes.queryIsDone(blockTransactions.getBlockHash());
+                    }else{
+                        App.bm.blockHashes.queryIsFailed(blockTransactions.getBlockHash());
+                    }
+                }
+            }
+        });
+        if(!queued && requested){
+            App.bm.blockHashes.queryIsFailed(completedBlock.getHash());
+        }
+    }
+
+    @Override
+    public void connectionClosed() {
+        if(state.getAndSet(State.CLOSED) == State.CLOSED){
+            return;
+        }
+        System.out.println("A TCP kapcsolat megszakadt (" + socketAddress + ").");
+
+        // a félbemaradt szűrt blokkot újból lekérjük
+        FilteredBlock pendingBlock = filteredBlock;
+        if(pendingBlock != null && filteredBlockRequested){
+            App.bm.blockHashes.queryIsFailed(pendingBlock.getHash());
+        }
+
+        App.nm.connectNewNodes();
+        App.nm.wakeUp();
+    }
+
+    // a TCP kapcsolat a csomóponttal felépült
+    @Override
+    public void connectionOpened() {
+        System.out.println("A TCP kapcsolat kiépült ("+socketAddress+").");
+
+        // a kapcsolódási időkorlát a továbbiakban nem érvényes
+        setTimeoutEnabled(false);
+
+        if(state.compareAndSet(State.CONNECTING, State.HANDSHAKING)){
+            handshake();
+        }
+    }
+
+    // a csomópontokkal történő kézfogás egy version üzenet elküldésével indul el
+    private void handshake() {
+        VersionMessage message = new VersionMessage(App.netParams, App.bm.blockChain.getBestChainHeight());
+        message.appendToSubVer("Bitcoin tárcaprogram", "0.1", null);
+
+        // a tranzakciók továbbítását csak a Bloom-szűrő elküldése után kérjük
+        message.relayTxesBeforeFilter = false;
+        sendMessage(message);
+    }
+
+    public RttEstimator getRttEstimator(int type){
+        return rttEstimators[type - 1];
+    }
+
+    /**
+     * A blokkfej-lekérés nyilvántartásba vétele és az időkorlátjának ütemezése.
+     *
+     * @param headersQuery
+     */
+    public void setHeadersQuery(Utils.Pending headersQuery){
+        synchronized (inFlight){
+            this.headersQuery = headersQuery;
+            headersQuery.setTimeout(App.nm.scheduleTimeout(this, headersQuery, 1));
+        }
+    }
+
+    public Utils.Pending getHeadersQuery(){
+        return headersQuery;
+    }
+
+    /**
+     * A lekért blokkfejek megérkeztek; a válaszidőt felhasználjuk a becsléshez.
+     */
+    private void completeHeadersQuery(){
+        Utils.Pending pending = headersQuery;
+        if(pending != null){
+            long rtt = (System.nanoTime() - pending.getStartTime()) / 1000000L;
+            getRttEstimator(Utils.Pending.HEADERS).sample(rtt);
+            stats.recordResponse(rtt, rtt);
+        }
+
+        removeHeadersQuery();
+    }
+
+    /**
+     * A blokkfej-lekérés befejeződött (válasz érkezett vagy megszakadt a kapcsolat), így a csomópont
+     * a következő lekérést azonnal megkaphatja.
+     *
+     * @return az eltávolított lekérés, vagy null, ha nem volt függőben blokkfej-lekérés
+     */
+    public Utils.Pending removeHeadersQuery(){
+        Utils.Pending removed;
+
+        synchronized (inFlight){
+            removed = headersQuery;
+            if(removed != null){
+                removed.cancelTimeout();
+                headersQuery = null;
+            }
+        }
+
+        wakeUpNodeManager();
+        return removed;
+    }
+
+    /**
+     * Tranzakció vagy blokk lekérésének nyilvántartásba vétele és az időkorlátjának ütemezése. A csomópont
+     * a lekéréseket sorban szolgálja ki, ezért az időkorlát a lekérés előtt függőben lévő lekérések számával
+     * arányos.
+     *
+     * @param pending
+     */
+    public void addInFlight(Utils.Pending pending){
+        synchronized (inFlight){
+            inFlight.put(pending.getHash(), pending);
+            pending.setTimeout(App.nm.scheduleTimeout(this, pending, inFlight.size()));
+            pending.setHedgeTimeout(App.nm.scheduleHedge(this, pending));
+        }
+    }
+
+    /**
+     * A tartalmat a csomóponttól lekértük-e, és a válasz még nem érkezett meg.
+     *
+     * @param hash
+     * @return
+     */
+    public boolean hasInFlight(Sha256Hash hash){
+        synchronized (inFlight){
+            return inFlight.containsKey(hash);
+        }
+    }
+
+    /**
+     * Az adott lekérés még függőben van-e a csomópontnál.
+     *
+     * @param pending
+     * @return
+     */
+    public boolean isInFlight(Utils.Pending pending){
+        synchronized (inFlight){
+            return inFlight.get(pending.getHash()) == pending;
+        }
+    }
+
+    /**
+     * A lekérés visszavonása (a tartalom egy másik csomóponttól már megérkezett); a csomópont
+     * statisztikáit nem befolyásolja.
+     *
+     * @param hash
+     */
+    public void cancelInFlight(Sha256Hash hash){
+        synchronized (inFlight){
+            Utils.Pending pending = inFlight.remove(hash);
+            if(pending == null){
+                return;
+            }
+            pending.cancelTimeout();
+        }
+
+        wakeUpNodeManager();
+    }
+
+    /**
+     * A beérkezett tranzakció vagy blokk a csomóponttól általunk lekért tartalom-e; ha igen, a lekérést
+     * lezárjuk, így a helyére új lekérés kerülhet.
+     *
+     * @param hash
+     * @return
+     */
+    public boolean completeInFlight(Sha256Hash hash){
+        synchronized (inFlight){
+            Utils.Pending pending = inFlight.get(hash);
+            if(pending == null || !pending.isReceived(hash)){
+                return false;
+            }
+            inFlight.remove(hash);
+            pending.cancelTimeout();
+
+            // a válaszidő a lekérés indulásától, illetve az előző tartalom beérkezésétől (ha az későbbi)
+            // eltelt idő; így a sorban kiszolgált lekérések esetén a csomópont átviteli sebességét mérjük
+            long now = System.nanoTime();
+            long rtt = (now - Math.max(pending.getStartTime(), lastReceiveTime)) / 1000000L;
+            lastReceiveTime = now;
+
+            getRttEstimator(pending.getType()).sample(rtt);
+            stats.recordResponse((now - pending.getStartTime()) / 1000000L, rtt);
+        }
+
+        // ha a tartalmat egy másik csomóponttól is lekértük, az ottani lekérést visszavonjuk
+        if(App.nm != null){
+            App.nm.cancelDuplicates(this, hash);
+        }
+
+        wakeUpNodeManager();
+        return true;
+    }
+
+    public int getInFlightCount(){
+        synchronized (inFlight){
+            return inFlight.size();
+        }
+    }
+
+    // az adott típusú függőben lévő lekérések száma
+    public int getInFlightCount(int type){
+        int count = 0;
+        synchronized (inFlight){
+            for(Utils.Pending pending: inFlight.values()){
+                if(pending.getType() == type){
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A lekérés időkorlátja lejárt; ha a lekérés még függőben van, eltávolítjuk, és a csomópont
+     * következő lekéréseire hosszabb időkorlátot szabunk.
+     *
+     * @param pending
+     * @return a lekérés függőben volt-e
+     */
+    public boolean expire(Utils.Pending pending){
+        synchronized (inFlight){
+            if(headersQuery == pending){
+                headersQuery = null;
+            }
+            else if(inFlight.get(pending.getHash()) == pending){
+                inFlight.remove(pending.getHash());
+            }
+            else{
+                return false;
+            }
+        }
+
+        getRttEstimator(pending.getType()).backoff();
+        stats.recordTimeout();
+        return true;
+    }
+
+    /**
+     * Az összes függőben lévő lekérés eltávolítása (pl. a kapcsolat megszakadásakor).
+     *
+     * @return az eltávolított lekérések
+     */
+    public List<Utils.Pending> removeAllInFlight(){
+        synchronized (inFlight){
+            List<Utils.Pending> removed = new ArrayList<Utils.Pending>(inFlight.values());
+            inFlight.clear();
+
+            for(Utils.Pending pending: removed){
+                pending.cancelTimeout();
+            }
+            return removed;
+        }
+    }
+
+    private void wakeUpNodeManager(){
+        if(App.nm != null){
+            App.nm.wakeUp();
+        }
+    }
+}
@@ -1,389 +1,1039 @@
-package de.ik.danyi.bitcoin;
-
-import org.bitcoinj.core.*;
-
-import javax.swing.*;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.net.UnknownHostException;
-import java.util.*;
-
-/**
- * Vezérli a csomópontok között a lekéréseket, amelyek tranzakcióra, blokkra, vagy
- * blokkfejekre vonatkozhatnak.
- *
- * Meghatározott számú csomóponthoz kapcsolódunk; ha valamelyikkel megszakad a kapcsolat,
- * újhoz csatlakozunk.
- *
- * Created by Imre Danyi on 2015.04.15..
- */
-public class NodeManager implements Runnable{
-
-    private final Thread thread;
-    private boolean isRunning;
-
-    private int port;
-    private int maxNodes;
-    private List<Node> nodes;
-
-    // a kapcsolódott csomópontoktól újabb elérhető csomópontok címeit kapjuk meg, valamint
-    // előre rögzített DNS szerverektől nslookup révén szerzett IP címeket tárolja
-    private Set<PeerAddress> availableAddresses;
-
-    // a lekérésekre szánt maximális válaszidő
-    private long timeLimit;
-
-    public NodeManager(int maxNodes, int timeLimit){
-
-        isRunning = true;
-
-        nodes = new ArrayList<Node>();
-        availableAddresses = new HashSet<PeerAddress>();
-
-        this.maxNodes = maxNodes;
-        this.timeLimit = timeLimit;
-
-        // a Bitcoin választott hálózatában (teszt vagy fő) használatos port (teszthálózat esetén a 18333-as)
-        port = App.netParams.getPort();
-
-        addressesFromDNS();
-
-        thread = new Thread(this, "NodeManager");
-        thread.start();
-    }
-
-    public Set<PeerAddress> getAvailableAddresses() {
-        return availableAddresses;
-    }
-
-    /**
-     * Csomópont címek lekérése DNS szerverektől a hálózathoz történő első kapcsolódáskor,
-     * valamint ha az elérhető címek listája kiürült, a DNS szerverektől újra lekérdezzük
-     * a nyilvántartott IP címeket.
-     */
-    private void addressesFromDNS(){
-
-        // elérhető DNS címek listája
-        String[] dnsSeeds = App.netParams.getDnsSeeds();
-
-        try {
-            for(String dnsSeed: dnsSeeds){
-                InetAddress[] addrs = InetAddress.getAllByName(dnsSeed);
-
-                for(InetAddress addr: addrs){
-
-                    PeerAddress peerAddress = new PeerAddress(addr, port);
-                    availableAddresses.add(peerAddress);
-                }
-            }
-
-        } catch (UnknownHostException e) {
-            e.printStackTrace();
-        }
-
-        // az első csomóponthoz csatlakozás
-        connectANewNode();
-    }
-
-    // ha megtörtént a kézfogás
-    public int regNode(Node node) {
-        nodes.add(node);
-        System.out.println(String.format("Új csomópont: " + node.getSocketAddress()));
-        System.out.println("Összes csomópont: " + nodes.size());
-        return nodes.size();
-    }
-
-
-    public void removeNode(Node node){
-        Iterator<Node> iterator = nodes.iterator();
-        while (iterator.hasNext()){
-            if(iterator.next().getAddress().equals(node.getAddress())){
-                System.out.println("Csomópont törölve: " + node.getSocketAddress());
-                iterator.remove();
-                break;
-            }
-        }
-        System.out.println("Összes csomópont: " + nodes.size());
-    }
-
-    /**
-     * Az általunk engedélyezett csomópontok száma.
-     * @return
-     */
-    public int getMaxNodes() {
-        return maxNodes;
-    }
-
-    /**
-     * Az aktuálisan csatlakozott csomópontokat számolja meg.
-     * @return
-     */
-    public int countConnectedNodes(){
-        int num = 0;
-
-        for(Node node: nodes){
-            if(node.isConnected()){
-                ++num;
-            }
-        }
-
-        return num;
-    }
-
-    /**
-     * IGAZ értékkel tér vissza, ha minden aktuális csomóponttal szinkronizáltuk
-     * a blokkláncunkat.
-     *
-     * @return
-     */
-    private boolean syncedWithAllNode(){
-        int syncedNodes = 0;
-
-        for(Node node: getNodes()){
-            if(node.isConnected() && node.isSyncIsFinished()){
-                syncedNodes++;
-            }
-        }
-
-        if(syncedNodes == countConnectedNodes()){
-            return true;
-        }else{
-            return false;
-        }
-    }
-
-
-    /**
-     * A kapcsolódó csomópontok további csomópontok címeit küldhetik el nekünk,
-     * amelyet későbbi kapcsolódás esetén használunk fel.
-     *
-     * @param addressList
-     */
-    public void regAvailableNodes(List<PeerAddress> addressList){
-        if(availableAddresses == null){
-            availableAddresses = new HashSet<PeerAddress>();
-        }
-
-        for(PeerAddress addr: addressList){
-            availableAddresses.add(addr);
-        }
-    }
-
-    /**
-     * A következő elérhető csomóponthoz kapcsolódunk.
-     */
-    public void connectANewNode(){
-
-        if(countConnectedNodes() >= getMaxNodes()) {
-            return;
-        }
-
-        // ha kiürült az elérhető csomópontok listája, a DNS szerverektől
-        // kérünk le ismét elérhető címeket
-        if(availableAddresses.size() == 0){
-            addressesFromDNS();
-            return;
-        }
-
-        Iterator<PeerAddress> iterator = availableAddresses.iterator();
-        if(iterator.hasNext()){
-            PeerAddress addr = iterator.next();
-
-            // az aktuálisan kivett címet töröljük az elérhetőek közül
-            availableAddresses.remove(addr);
-
-            InetSocketAddress socketAddress = new InetSocketAddress(addr.getAddr(), port);
-            new Node(App.netParams, socketAddress);
-        }
-    }
-
-    /**
-     * Üzenet küldése az összes kapcsolódott csomópontnak.
-     *
-     * @param message
-     */
-    public void sendMsgToAllNodes(Message message){
-
-        if(message != null){
-            for(Node node: nodes){
-                node.sendMessage(message);
-            }
-        }
-
-    }
-
-    public synchronized List<Node> getNodes(){
-        return nodes;
-    }
-
-    @Override
-    public void run() {
-
-        while (isRunning) {
-
-            for(int i=0; i<getNodes().size(); ++i){
-
-                Node node = null;
-                try {
-                    node = getNodes().get(i);
-                } catch (ConcurrentModificationException e){
-                    System.out.println("Konkurens hozzáférési hiba.");
-                    e.printStackTrace();
-                }
-
-                // ha már megtörtént a kézfogás
-                if(node != null && !node.waitForHandshake){
-
-                    Utils.Pending pending = node.getPending();
-
-                    // ha van függőben lévő lekérés
-                    if(pending != null){
-
-                        // ha a lekérésre szánt idő lejárt
-                        if(pending.isTimeout(timeLimit)){
-
-                            System.out.println("A lekérésre szánt idő lejárt.");
-                            boolean b = false;
-
-                            switch (pending.getType()){
-                                case Utils.Pending.TRANSACTION:
-                                    b = TransactionManager.txHashes.queryIsFailed(pending.getHash());
-                                    break;
-                                case Utils.Pending.BLOCK:
-                                    b = App.bm.blockHashes.queryIsFailed(pending.getHash());
-                                    break;
-                                case Utils.Pending.HEADERS:
-                                    // üres
-                                    break;
-                            }
-
-                            node.removePending();
-
-                            // ha már nem tudunk a csomóponttól lekérdezni
-                            if(!node.isConnected()){
-                                removeNode(node);
-                            }
-                        }
-                    }
-
-                    // nincs függőben lévő lekérés, így elindítunk egyet (ha szükséges)
-                    else if(node.isConnected()){
-
-                        // először a hiányzó blokkfejlécek letöltésével foglalkozunk
-
-                        // ha a blokklánc még nincs szinkronizálva a csomópontokkal
-                        if(!App.bm.isChainSynced()){
-
-                            // ha még van lekérhető blokkfej a csomóponttól
-                            if(!node.isSyncIsFinished()) {
-
-                                SwingUtilities.invokeLater(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        App.ui.printSyncStatus(
-                                                String.format("Blokklánc szinkronizálása: %d blokkfej letöltve.",
-                                                App.bm.blockChain.getBestChainHeight()));
-                                    }
-                                });
-
-                                int nodeBestHeight = (int)node.getBestHeight();
-                                // az adott csomóponttal szinkronizáltuk a blokkláncunkat
-                                if(nodeBestHeight <= App.bm.blockChain.getBestChainHeight()){
-                                    node.syncIsFinished();
-                                    continue;
-                                }
-
-                                // hiányzó blokkfejek lekérése
-                                query(node, Utils.Pending.HEADERS);
-                            }
-
-                            // ha minden csomóponttal szinkronizáltuk a blokkláncunkat
-                            else if(syncedWithAllNode()){
-                                App.bm.chainIsSynced();
-                                System.out.println("A blokklánc szikronizálásra került.");
-
-                                // UI frissítése
-                                SwingUtilities.invokeLater(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        App.ui.printSyncStatus(String.format("Blokklánc szinkronizálva.",
-                                                App.bm.blockChain.getBestChainHeight()));
-                                    }
-                                });
-                            }
-                        }
-
-                        // amíg a blokklánc nem kerül szinkronizálásra a csomópontokkal, nem kérjük
-                        // le az időközben a csomópontoktól kapott tranzakciók, blokkok tartalmát
-                        else if(!TransactionManager.txHashes.isDone()){
-                            query(node, Utils.Pending.TRANSACTION);
-                        }
-
-                        // majd a kapott blokkok tartalmát kérjük le
-                        else if(!App.bm.blockHashes.isDone()){
-                            query(node, Utils.Pending.BLOCK);
-                        }
-
-                    }
-                    else if(!node.isConnected()){
-                        removeNode(node);
-                    }
-                }
-
-            }
-
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    /**
-     * Tranzakció vagy blokk tartalmát, vagy a hiányzó blokkfejléceket kér le a csomóponttól.
-     * @param type
-     */
-    private void query(Node node, int type){
-        Message getMessage = null;
-        Sha256Hash hash = null;
-
-        if(type == Utils.Pending.TRANSACTION){
-            GetDataMessage getDataMessage = new GetDataMessage(App.netParams);
-            hash = TransactionManager.txHashes.getNextHash();
-            getDataMessage.addTransaction(hash);
-            getMessage = getDataMessage;
-        }
-        else if(type == Utils.Pending.BLOCK){
-            GetDataMessage getDataMessage = new GetDataMessage(App.netParams);
-            hash = App.bm.blockHashes.getNextHash();
-            getDataMessage.addBlock(hash);
-            getMessage = getDataMessage;
-        }
-        else if(type == Utils.Pending.HEADERS){
-            GetHeadersMessage getHeaders = App.bm.getMissingBlockHeaders();
-            hash = App.bm.blockChain.getChainHead().getHeader().getHash();
-            getMessage = getHeaders;
-        }
-
-        // üzenet elküldése
-        if(hash != null && getMessage != null){
-            node.setPending(new Utils.Pending(hash, type));
-            sendMessageTo(getMessage, node);
-        }
-    }
-
-    /**
-     * Üzenet küldése meghatározott csomópontnak.
-     *
-     * @param message
-     * @param node
-     */
-    private void sendMessageTo(Message message, Node node){
-        if(node.isConnected()){
-            node.sendMessage(message);
-        }else{
-            System.out.println(String.format("%s már nem tudunk üzenetet küldeni.", node.getSocketAddress()));
-        }
-    }
-}
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.*;
+import org.bitcoinj.net.NioClientManager;
+
+import javax.swing.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Vezérli a csomópontok között a lekéréseket, amelyek tranzakcióra, blokkra, vagy
+ * blokkfejekre vonatkozhatnak.
+ *
+ * Meghatározott számú csomóponthoz kapcsolódunk; ha valamelyikkel megszakad a kapcsolat,
+ * újhoz csatlakozunk. A hiányzó csomóponthelyekre egyszerre több jelölthöz kapcsolódunk, és az
+ * elsőként kézfogást végző csomópontokat tartjuk meg, így egy nem elérhető cím a többi kapcsolódást
+ * nem tartja fel. Az összes csomópont kapcsolatát egyetlen, közös NioClientManager (egy szál,
+ * egy selector) kezeli, így a csomópontok száma a szálak számát nem növeli.
+ *
+ * Az új csomópontok címét a perzisztens címjegyzékből (AddressBook) választjuk; a DNS szervereket
+ * csak akkor kérdezzük le, ha a címjegyzékben nincs kipróbálható cím. A DNS szervereket párhuzamosan,
+ * a NodeManager szálától függetlenül kérdezzük le (lásd DnsSeeder), és az első beérkező címekkel
+ * azonnal kapcsolódunk.
+ *
+ * A lekérések kiosztása eseményvezérelt: a szál addig várakozik, amíg egy esemény (válasz
+ * beérkezése, új lekérendő hash érték, csomópont csatlakozása vagy lecsatlakozása, egy lekérés
+ * időkorlátjának lejárta) nem történik. Az esemény után a szabaddá vált csomópont azonnal megkapja
+ * a következő lekérést.
+ *
+ * A lekérések időkorlátjait egy időzítő kerék (TimingWheel) kezeli; az időkorlát a csomópont mért
+ * válaszidejéből adódik (lásd RttEstimator), így a lassú csomópontok a rögzített időkorlátnál jóval
+ * hamarabb felismerhetők.
+ *
+ * A csomópontok teljesítményét mérjük (lásd NodeStats), a lekéréseket a pontszámuk szerinti sorrendben
+ * osztjuk ki, a gyengébb csomópontok a pontszámukkal arányosan kisebb lekérési ablakot kapnak, a
+ * leggyengébb csomópontot pedig időnként egy újra cseréljük.
+ *
+ * Ha egy tranzakció vagy blokk lekérése a csomópont 95%-os válaszidején túl is függőben van, a tartalmat
+ * egy másik csomóponttól is lekérjük (hedged request); az elsőként beérkező válasz után a másik lekérést
+ * visszavonjuk. Az ismételt lekérések számát egy keret korlátozza.
+ *
+ * Egy csomóponttól egyszerre legfeljebb maxInFlight tranzakciót vagy blokkot kérünk le (lekérési ablak);
+ * a válaszokat hash érték alapján párosítjuk a lekérésekhez, az időkorlátot lekérésenként figyeljük.
+ * Így egy csomópont nem csak egy tartalmat szolgál ki a válaszidőnként.
+ *
+ * Created by Imre Danyi on 2015.04.15..
+ */
+public class NodeManager implements Runnable{
+
+    private final Thread thread;
+    private boolean isRunning;
+
+    private int port;
+    private int maxNodes;
+
+    // a kapcsolódó, illetve kapcsolódott csomópontok (lásd PeerRegistry)
+    private final PeerRegistry peers;
+
+    // a csomópontok kapcsolatait kezelő közös selector szál
+    private final NioClientManager connectionManager;
+
+    // a TCP kapcsolat felépítésére szánt idő (ms)
+    private static final int CONNECT_TIMEOUT = 10000;
+
+    // egy hiányzó csomóponthelyre ennyi jelölthöz kapcsolódunk egyszerre, de összesen legfeljebb
+    // MAX_CONNECTING kapcsolódás lehet folyamatban
+    private static final int RACE_FACTOR = 2;
+    private static final int MAX_CONNECTING = 8;
+
+    // a kapcsolódott csomópontoktól kapott, valamint előre rögzített DNS szerverektől nslookup révén
+    // szerzett csomópont címek, a velük kapcsolatos tapasztalatainkkal együtt (lásd AddressBook)
+    private final AddressBook addressBook;
+
+    // a címjegyzéket ilyen időközönként mentjük (ms)
+    private static final long ADDRESS_BOOK_SAVE_INTERVAL = 10 * 60 * 1000;
+
+    private long lastAddressBookSaveTime = System.currentTimeMillis();
+
+    // a csomópontoktól érkező üzenetek feldolgozó szakaszai
+    private final MessagePipeline pipeline;
+
+    // a feldolgozó szakaszok mérőszámait ilyen időközönként írjuk ki (ms)
+    private static final long PIPELINE_LOG_INTERVAL = 60000;
+
+    private long lastPipelineLogTime = System.currentTimeMillis();
+
+    // a körüzenetek egyszeri szerializálásához
+    private final BitcoinSerializer serializer = new BitcoinSerializer(App.netParams);
+
+    // a DNS szerverek párhuzamos lekérdezése
+    private final DnsSeeder dnsSeeder;
+
+    // egy DNS szerver válaszára legfeljebb ennyi ideig várunk (ms)
+    private static final long DNS_TIMEOUT = 5000;
+
+    // a DNS szervereket legfeljebb ilyen gyakran kérdezzük le újra (ms)
+    private static final long DNS_RETRY_INTERVAL = 60000;
+
+    private volatile long lastDnsTime = 0;
+
+    // a lekérésekre szánt maximális válaszidő; a válaszidő mérése előtt ezt használjuk
+    private long timeLimit;
+
+    // az időzítő kerék egy rekeszének hossza (ms) és a rekeszek száma
+    private static final long TIMER_TICK = 50;
+    private static final int TIMER_WHEEL_SIZE = 512;
+
+    private final TimingWheel timingWheel;
+
+    // a lejárt időzítések feladatai; az időzítő kerék szála csak sorba teszi őket, a végrehajtás
+    // a NodeManager szálán történik, így a csomópontok és a lekérések állapotát csak ez a szál módosítja
+    private final Queue<Runnable> timerTasks = new ConcurrentLinkedQueue<Runnable>();
+
+    // egy csomóponttól egyidejűleg függőben lévő tranzakció- és blokklekérések legnagyobb száma
+    private int maxInFlight;
+
+    // a csomópontoknak ilyen időközönként küldünk ping üzenetet (ms)
+    private static final long PING_INTERVAL = 30000;
+
+    // a leggyengébb csomópont cseréjének vizsgálata ilyen időközönként történik (ms)
+    private static final long REPLACE_INTERVAL = 60000;
+
+    // a leggyengébb csomópontot lecseréljük, ha a pontszáma a legjobb csomópont pontszámának ennyiszerese alatt van
+    private static final double REPLACE_SCORE_RATIO = 0.25;
+
+    // a blokkláncunknál ennyi blokkal rövidebb blokklánccal rendelkező csomópont lemaradónak számít
+    private static final int MAX_HEIGHT_LAG = 2;
+
+    private long lastReplaceTime = System.currentTimeMillis();
+
+    // minden kiadott lekérés ennyi ismételt lekérést tesz lehetővé; a keret legfeljebb HEDGE_BURST lehet
+    private static final double HEDGE_RATIO = 0.05;
+    private static final double HEDGE_BURST = 4;
+
+    // a felhasználható ismételt lekérések száma (a duplikált sávszélesség korlátja)
+    private double hedgeBudget = HEDGE_BURST;
+
+    // esemény hiányában legfeljebb ennyi ideig várakozunk (pl. a szinkronizáció állapotának ellenőrzéséhez)
+    private static final long MAX_WAIT = 1000;
+
+    // a várakozó szál felébresztéséhez
+    private final Object eventLock = new Object();
+    private boolean eventPending = false;
+
+    public NodeManager(int maxNodes, int timeLimit, int maxInFlight){
+        this(maxNodes, timeLimit, maxInFlight, SeedResolver.SYSTEM);
+    }
+
+    /**
+     * @param maxNodes a kapcsolódott csomópontok száma
+     * @param timeLimit a lekérésekre szánt maximális válaszidő (ms)
+     * @param maxInFlight egy csomóponttól egyidejűleg függőben lévő lekérések legnagyobb száma
+     * @param seedResolver a DNS szerverek neveinek feloldója
+     */
+    public NodeManager(int maxNodes, int timeLimit, int maxInFlight, SeedResolver seedResolver){
+
+        isRunning = true;
+
+        peers = new PeerRegistry();
+
+        pipeline = new MessagePipeline();
+
+        connectionManager = new NioClientManager();
+        connectionManager.startAsync();
+        connectionManager.awaitRunning();
+
+        addressBook = new AddressBook(App.peersFile);
+
+        this.maxNodes = maxNodes;
+        this.timeLimit = timeLimit;
+        this.maxInFlight = maxInFlight;
+
+        timingWheel = new TimingWheel(TIMER_TICK, TIMER_WHEEL_SIZE);
+
+        dnsSeeder = new DnsSeeder(seedResolver, timingWheel);
+
+        // a Bitcoin választott hálózatában (teszt vagy fő) használatos port (teszthálózat esetén a 18333-as)
+        port = App.netParams.getPort();
+
+        // az első csomópontokhoz csatlakozás (a címjegyzékből, ennek hiányában a DNS szerverektől kapott címekkel)
+        connectNewNodes();
+
+        thread = new Thread(this, "NodeManager");
+        thread.start();
+    }
+
+    public MessagePipeline getPipeline(){
+        return pipeline;
+    }
+
+    /**
+     * A címjegyzék mentése (a program leállításakor).
+     */
+    public void close(){
+        addressBook.save();
+    }
+
+    /**
+     * Csomópont címek lekérése DNS szerverektől, ha a címjegyzékben nincs kipróbálható cím (pl. a
+     * hálózathoz történő első kapcsolódáskor). A lekérdezés aszinkron: a DNS szerverenként beérkező
+     * címek a címjegyzékbe kerülnek, és azonnal új csomóponthoz kapcsolódunk.
+     */
+    private void addressesFromDNS(){
+        if(dnsSeeder.isRunning() || System.currentTimeMillis() - lastDnsTime < DNS_RETRY_INTERVAL){
+            return;
+        }
+
+        // elérhető DNS címek listája
+        String[] dnsSeeds = App.netParams.getDnsSeeds();
+
+        boolean started = dnsSeeder.resolve(dnsSeeds, DNS_TIMEOUT, new DnsSeeder.Listener() {
+            @Override
+            public void addressesResolved(String seed, InetAddress[] addrs) {
+                for(InetAddress addr: addrs){
+                    addressBook.add(new InetSocketAddress(addr, port), System.currentTimeMillis());
+                }
+
+                connectNewNodes();
+            }
+        });
+
+        if(started){
+            System.out.println("Csomópont címek lekérése a DNS szerverektől.");
+            lastDnsTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * A kézfogást elvégző csomópont felvétele a lekérdezhető csomópontok közé, ha még van szabad
+     * csomóponthely; egyébként a csomópont elvesztette a kapcsolódási versenyt, és lecsatlakoztatjuk.
+     * A kézfogás mindkét esetben sikeres volt, ezt (és a kézfogás idejét) a címjegyzékben rögzítjük.
+     * Ha a csomóponthelyek beteltek, a még folyamatban lévő kapcsolódásokat visszavonjuk.
+     *
+     * @param node
+     * @return true, ha a csomópont lekérdezhetővé vált
+     */
+    public synchronized boolean admitNode(Node node){
+        addressBook.markSuccess(node.getSocketAddress(), node.getHandshakeLatency());
+
+        if(peers.count(Node.State.READY) >= getMaxNodes()){
+            System.out.println("A csomóponthelyek beteltek, a kapcsolatot lezárjuk (" + node.getSocketAddress() + ").");
+            node.cancel();
+            return false;
+        }
+
+        if(node.isCancelled() || !node.setReady()){
+            return false;
+        }
+
+        if(regNode(node) >= getMaxNodes()){
+            for(Node other: peers.getAll()){
+                Node.State state = other.getState();
+                if(state == Node.State.CONNECTING || state == Node.State.HANDSHAKING){
+                    other.cancel();
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // ha megtörtént a kézfogás (a csomópont a kapcsolódáskor került nyilvántartásba)
+    private int regNode(Node node) {
+        int readyNodes = peers.count(Node.State.READY);
+        System.out.println(String.format("Új csomópont: " + node.getSocketAddress()));
+        System.out.println("Összes csomópont: " + readyNodes);
+        wakeUp();
+        return readyNodes;
+    }
+
+    /**
+     * Egy esemény történt (válasz érkezett, új lekérendő tartalom, csomópont változás), így a
+     * lekérések kiosztását azonnal elvégezzük.
+     */
+    public void wakeUp(){
+        synchronized (eventLock){
+            eventPending = true;
+            eventLock.notifyAll();
+        }
+    }
+
+    /**
+     * Várakozás a következő eseményig, legfeljebb a megadott ideig.
+     *
+     * @param timeout
+     */
+    private void awaitEvent(long timeout){
+        synchronized (eventLock){
+            long deadline = System.currentTimeMillis() + timeout;
+            long remaining = timeout;
+
+            while (!eventPending && remaining > 0){
+                try {
+                    eventLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+
+            eventPending = false;
+        }
+    }
+
+
+    public void removeNode(Node node){
+        if(peers.remove(node)){
+            System.out.println("Csomópont törölve: " + node.getSocketAddress());
+        }
+        System.out.println("Összes csomópont: " + peers.count(Node.State.READY));
+        wakeUp();
+    }
+
+    /**
+     * A csomópont érvénytelen adatot (pl. a láncunkba nem illeszthető blokkfejeket) küldött: a kapcsolatot
+     * lezárjuk (a függőben lévő lekérései más csomópontokhoz kerülnek), a címét pedig sikertelennek jelöljük.
+     *
+     * @param node
+     */
+    public void penalize(Node node){
+        System.out.println(String.format("A csomópont érvénytelen adatot küldött, a kapcsolatot lezárjuk. (%s)",
+                node.getSocketAddress()));
+
+        addressBook.markFailure(node.getSocketAddress());
+        node.close();
+    }
+
+    /**
+     * A blokklánc újraszinkronizálásakor (pl. egy korábbi ellenőrzőponttól) minden csomóponttól
+     * újból lekérjük a hiányzó blokkfejeket.
+     */
+    public void restartSync(){
+        for(Node node: getNodes()){
+            node.syncIsNotFinished();
+        }
+        wakeUp();
+    }
+
+    /**
+     * Az általunk engedélyezett csomópontok száma.
+     * @return
+     */
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Az aktuálisan csatlakozott, illetve épp kapcsolódó csomópontokat számolja meg.
+     * @return
+     */
+    public int countConnectedNodes(){
+        return peers.count(Node.State.CONNECTING, Node.State.HANDSHAKING, Node.State.READY);
+    }
+
+    /**
+     * IGAZ értékkel tér vissza, ha minden aktuális csomóponttal szinkronizáltuk
+     * a blokkláncunkat.
+     *
+     * @return
+     */
+    private boolean syncedWithAllNode(){
+        int syncedNodes = 0;
+
+        List<Node> readyNodes = getNodes();
+        for(Node node: readyNodes){
+            if(node.isSyncIsFinished()){
+                syncedNodes++;
+            }
+        }
+
+        if(syncedNodes == readyNodes.size()){
+            return true;
+        }else{
+            return false;
+        }
+    }
+
+
+    /**
+     * A kapcsolódó csomópontok további csomópontok címeit küldhetik el nekünk,
+     * amelyet későbbi kapcsolódás esetén használunk fel.
+     *
+     * @param addressList
+     */
+    public void regAvailableNodes(List<PeerAddress> addressList){
+        for(PeerAddress addr: addressList){
+            addressBook.add(new InetSocketAddress(addr.getAddr(), addr.getPort()), addr.getTime() * 1000);
+        }
+    }
+
+    /**
+     * A hiányzó csomóponthelyekre új csomópontokhoz kapcsolódunk: minden hiányzó helyre RACE_FACTOR
+     * jelöltet választunk a címjegyzékből, és párhuzamosan kapcsolódunk hozzájuk. Az elsőként kézfogást
+     * végző csomópontokat tartjuk meg, a többit visszavonjuk (lásd admitNode).
+     */
+    public synchronized void connectNewNodes(){
+
+        int missing = getMaxNodes() - peers.count(Node.State.READY);
+        int connecting = peers.count(Node.State.CONNECTING, Node.State.HANDSHAKING);
+        int dial = Math.min(missing * RACE_FACTOR, MAX_CONNECTING) - connecting;
+
+        if(dial <= 0) {
+            return;
+        }
+
+        // a már kapcsolódott (vagy kapcsolódó) címekhez nem kapcsolódunk újra
+        Set<InetSocketAddress> exclude = new HashSet<InetSocketAddress>();
+        for(Node node: peers.getAll()){
+            exclude.add(node.getSocketAddress());
+        }
+
+        for(int i=0; i<dial; ++i){
+            InetSocketAddress socketAddress = addressBook.select(exclude);
+
+            // ha a címjegyzékben nincs kipróbálható cím, a DNS szerverektől kérünk le ismét elérhető
+            // címeket; a kapcsolódás a címek beérkezésekor történik
+            if(socketAddress == null){
+                addressesFromDNS();
+                break;
+            }
+
+            addressBook.markAttempt(socketAddress);
+            exclude.add(socketAddress);
+
+            Node node = new Node(App.netParams, socketAddress);
+            peers.add(node);
+            node.connect(connectionManager, CONNECT_TIMEOUT);
+        }
+
+        wakeUp();
+    }
+
+    /**
+     * Üzenet küldése az összes kapcsolódott csomópontnak. Az üzenetet (pl. egy nagy tranzakciót) csak
+     * egyszer szerializáljuk, és ugyanazt a bájtsorozatot adjuk át minden csomópont kapcsolatának.
+     *
+     * @param message
+     * @return csomópont címe -> sikerült-e az üzenetet a kapcsolat írási sorába tenni
+     */
+    public Map<InetSocketAddress, Boolean> sendMsgToAllNodes(Message message){
+        Map<InetSocketAddress, Boolean> results = new LinkedHashMap<InetSocketAddress, Boolean>();
+
+        if(message == null){
+            return results;
+        }
+
+        byte[] bytes;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.serialize(message, out);
+            bytes = out.toByteArray();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return results;
+        }
+
+        int sent = 0;
+        for(Node node: getNodes()){
+            boolean isSent = node.sendBytes(bytes);
+            results.put(node.getSocketAddress(), isSent);
+
+            if(isSent){
+                sent++;
+            }else{
+                System.out.println(String.format("%s már nem tudunk üzenetet küldeni.", node.getSocketAddress()));
+            }
+        }
+
+        System.out.println(String.format("Körüzenet (%s, %d bájt) elküldve %d/%d csomópontnak.",
+                message.getClass().getSimpleName(), bytes.length, sent, results.size()));
+
+        return results;
+    }
+
+    /**
+     * A címlista változásakor az új Bloom-szűrőt minden csomópontnak elküldjük.
+     */
+    public void sendBloomFilterToAllNodes(){
+        for(Node node: getNodes()){
+            node.sendBloomFilter();
+        }
+    }
+
+    /**
+     * A lekérdezésre kész csomópontok pillanatképe.
+     *
+     * @return
+     */
+    public List<Node> getNodes(){
+        return peers.getReady();
+    }
+
+    /**
+     * A csomópont pontszáma (nagyobb a jobb): a mért teljesítménye alapján (lásd NodeStats), a blokkláncunktól
+     * lemaradó csomópontok esetén a felére csökkentve.
+     *
+     * @param node
+     * @return
+     */
+    private double getScore(Node node){
+        double score = node.getStats().getScore();
+
+        if(node.getBestHeight() + MAX_HEIGHT_LAG < App.bm.blockChain.getBestChainHeight()){
+            score /= 2;
+        }
+
+        return score;
+    }
+
+    /**
+     * A csomópontok a pontszámuk szerint csökkenő sorrendben.
+     *
+     * @return
+     */
+    private List<Node> getNodesByScore(){
+        List<Node> sorted = new ArrayList<Node>(peers.getAll());
+
+        final Map<Node, Double> scores = new HashMap<Node, Double>();
+        for(Node node: sorted){
+            scores.put(node, getScore(node));
+        }
+
+        Collections.sort(sorted, new Comparator<Node>() {
+            @Override
+            public int compare(Node n1, Node n2) {
+                return Double.compare(scores.get(n2), scores.get(n1));
+            }
+        });
+
+        return sorted;
+    }
+
+    /**
+     * A csomópont lekérési ablaka: a még nem pontozható csomópontok a teljes ablakot kapják, a többiek
+     * a legjobb csomópont pontszámához viszonyított pontszámukkal arányos méretűt (legalább egyet).
+     *
+     * @param node
+     * @param bestScore
+     * @return
+     */
+    private int getWindow(Node node, double bestScore){
+        if(!node.getStats().hasEnoughSamples() || bestScore <= 0){
+            return maxInFlight;
+        }
+
+        return Math.max(1, (int)Math.round(maxInFlight * getScore(node) / bestScore));
+    }
+
+    /**
+     * Ha minden csomóponthelyünk foglalt, a leggyengébb (már pontozható) csomópontot lecsatlakoztatjuk,
+     * ha a pontszáma jóval a legjobb csomóponté alatt van; helyette a connectionClosed egy új
+     * csomóponthoz csatlakozik.
+     *
+     * @param nodesByScore
+     */
+    private void replaceWorstNode(List<Node> nodesByScore){
+        if(peers.count(Node.State.READY) < getMaxNodes() || nodesByScore.size() < 2 || addressBook.size() <= peers.size()){
+            return;
+        }
+
+        Node best = nodesByScore.get(0);
+        Node worst = null;
+        for(Node node: nodesByScore){
+            if(node.isReady() && node.getStats().hasEnoughSamples()){
+                worst = node;
+            }
+        }
+
+        if(worst == null || worst == best || getScore(worst) >= getScore(best) * REPLACE_SCORE_RATIO){
+            return;
+        }
+
+        System.out.println(String.format("A leggyengébb csomópont lecserélése: %s (%s)",
+                worst.getSocketAddress(), worst.getStats()));
+        worst.close();
+    }
+
+    @Override
+    public void run() {
+
+        while (isRunning) {
+
+            // a lejárt időkorlátok és az ismételt lekérések feldolgozása
+            Runnable timerTask;
+            while ((timerTask = timerTasks.poll()) != null){
+                timerTask.run();
+            }
+
+            // a lekéréseket a legjobb csomópontoktól kezdve osztjuk ki
+            List<Node> nodesByScore = getNodesByScore();
+            double bestScore = nodesByScore.isEmpty() ? 0 : getScore(nodesByScore.get(0));
+
+            if(System.currentTimeMillis() - lastPipelineLogTime > PIPELINE_LOG_INTERVAL){
+                lastPipelineLogTime = System.currentTimeMillis();
+                System.out.println(pipeline);
+            }
+
+            if(System.currentTimeMillis() - lastAddressBookSaveTime > ADDRESS_BOOK_SAVE_INTERVAL){
+                lastAddressBookSaveTime = System.currentTimeMillis();
+                addressBook.save();
+            }
+
+            // ha egyetlen csomóponthoz sem kapcsolódunk (pl. a DNS szerverek nem válaszoltak), újra próbálkozunk
+            if(peers.size() == 0){
+                connectNewNodes();
+            }
+
+            if(System.currentTimeMillis() - lastReplaceTime > REPLACE_INTERVAL){
+                lastReplaceTime = System.currentTimeMillis();
+                replaceWorstNode(nodesByScore);
+            }
+
+            for(Node node: nodesByScore){
+
+                // ha már nem tudunk a csomóponttól lekérdezni, a függőben lévő lekéréseit más
+                // csomópontok kapják meg
+                if(node.getState() == Node.State.CLOSED){
+                    Utils.Pending headersQuery = node.removeHeadersQuery();
+                    if(headersQuery != null){
+                        queryFailed(headersQuery);
+                    }
+                    for(Utils.Pending pending: node.removeAllInFlight()){
+                        queryFailed(pending);
+                    }
+
+                    // a kapcsolódás sikertelensége, illetve a mért válaszidő a címjegyzékbe kerül; a
+                    // visszavont kapcsolódás nem számít sikertelennek
+                    if(!node.isCancelled()){
+                        if(node.getHandshakeLatency() < 0){
+                            addressBook.markFailure(node.getSocketAddress());
+                        }else{
+                            addressBook.markLatency(node.getSocketAddress(), node.getStats().getPingRtt());
+                        }
+                    }
+
+                    removeNode(node);
+                    connectNewNodes();
+                    continue;
+                }
+
+                // csak a kézfogáson túljutott csomópontoktól kérünk le
+                if(!node.isReady()){
+                    continue;
+                }
+
+                // a hálózati körülfordulási idő mérése
+                if(node.getTimeSinceLastPing() > PING_INTERVAL){
+                    node.ping();
+                }
+
+                // a blokkfejek lekérése alatt más lekérést nem indítunk a csomópont felé
+                if(node.getHeadersQuery() != null){
+                    continue;
+                }
+
+                // először a hiányzó blokkfejlécek letöltésével foglalkozunk
+
+                // ha a blokklánc még nincs szinkronizálva a csomópontokkal
+                if(!App.bm.isChainSynced()){
+
+                    // ha még van lekérhető blokkfej a csomóponttól
+                    if(!node.isSyncIsFinished()) {
+
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                App.ui.printSyncStatus(
+                                        String.format("Blokklánc szinkronizálása: %d blokkfej letöltve.",
+                                        App.bm.blockChain.getBestChainHeight()));
+                            }
+                        });
+
+                        int nodeBestHeight = (int)node.getBestHeight();
+                        // az adott csomóponttal szinkronizáltuk a blokkláncunkat
+                        if(nodeBestHeight <= App.bm.blockChain.getBestChainHeight()){
+                            node.syncIsFinished();
+                            continue;
+                        }
+
+                        // hiányzó blokkfejek lekérése
+                        queryHeaders(node);
+                    }
+
+                    // ha minden csomóponttal szinkronizáltuk a blokkláncunkat
+                    else if(syncedWithAllNode()){
+                        App.bm.chainIsSynced();
+                        System.out.println("A blokklánc szikronizálásra került.");
+
+                        // UI frissítése
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                App.ui.printSyncStatus(String.format("Blokklánc szinkronizálva.",
+                                        App.bm.blockChain.getBestChainHeight()));
+                            }
+                        });
+                    }
+                }
+
+                // amíg a blokklánc nem kerül szinkronizálásra a csomópontokkal, nem kérjük
+                // le az időközben a csomópontoktól kapott tranzakciók, blokkok tartalmát;
+                // a lekérési ablakot a tranzakciókkal, majd a kapott blokkokkal töltjük fel, az ablak
+                // szabad helyeinek megfelelő számú tartalmat egy-egy getdata üzenetben kérve le
+                else{
+                    int window = getWindow(node, bestScore);
+                    int free;
+                    while ((free = window - node.getInFlightCount()) > 0){
+                        int queried = 0;
+
+                        // egy lekérésben legfeljebb a még fel nem használt kreditek számának megfelelő tartalmat
+                        // kérünk le; ha tranzakciót nem kérhetünk le (pl. a tranzakciók sora megtelt), a blokkok
+                        // letöltése ettől még folytatódik
+                        if(!TransactionManager.txHashes.isDone()){
+                            int credits = getCredits(node, Utils.Pending.TRANSACTION);
+                            if(credits > 0){
+                                queried = queryData(node, Utils.Pending.TRANSACTION, Math.min(free, credits));
+                            }
+                        }
+                        if(queried == 0 && !App.bm.blockHashes.isDone()){
+                            int credits = getCredits(node, Utils.Pending.BLOCK);
+                            if(credits > 0){
+                                queried = queryData(node, Utils.Pending.BLOCK, Math.min(free, credits));
+                            }
+                        }
+
+                        if(queried == 0){
+                            break;
+                        }
+                    }
+                }
+
+            }
+
+            awaitEvent(MAX_WAIT);
+        }
+    }
+
+    /**
+     * A lekérés időkorlátjának ütemezése. Az időkorlát a csomópont adott típusú lekéréseinek becsült
+     * válaszideje, szorozva a lekérés sorban elfoglalt helyével (a csomópont a lekéréseket sorban
+     * szolgálja ki), legfeljebb timeLimit.
+     *
+     * @param node
+     * @param pending
+     * @param position a lekérés helye a csomópont függőben lévő lekérései között (1-től)
+     * @return
+     */
+    public TimingWheel.Timeout scheduleTimeout(final Node node, final Utils.Pending pending, int position){
+        long timeout = Math.min(node.getRttEstimator(pending.getType()).getTimeout(timeLimit) * position, timeLimit);
+
+        return timingWheel.schedule(timeout, onManagerThread(new Runnable() {
+            @Override
+            public void run() {
+                requestTimedOut(node, pending);
+            }
+        }));
+    }
+
+    /**
+     * Az ismételt lekérés ütemezése a csomópont 95%-os válaszidejére, ha az ennél rövidebb, mint a lekérés
+     * időkorlátja. Ha a csomópontról még nincs elég mérésünk, vagy a lekérést már ismételtük, nem ütemezünk.
+     *
+     * @param node
+     * @param pending
+     * @return az időzítés, vagy null
+     */
+    public TimingWheel.Timeout scheduleHedge(final Node node, final Utils.Pending pending){
+        if(pending.isHedged() || !node.getStats().hasEnoughSamples()){
+            return null;
+        }
+
+        long delay = node.getStats().getLatencyPercentile(0.95);
+        if(delay < 0 || delay >= node.getRttEstimator(pending.getType()).getTimeout(timeLimit)){
+            return null;
+        }
+
+        return timingWheel.schedule(delay, onManagerThread(new Runnable() {
+            @Override
+            public void run() {
+                hedge(node, pending);
+            }
+        }));
+    }
+
+    /**
+     * Az időzítő kerék szálán lejáró feladatot a NodeManager szálára adja át.
+     *
+     * @param task
+     * @return
+     */
+    private Runnable onManagerThread(final Runnable task){
+        return new Runnable() {
+            @Override
+            public void run() {
+                timerTasks.add(task);
+                wakeUp();
+            }
+        };
+    }
+
+    // a NodeManager szálán fut
+    private void hedge(Node node, Utils.Pending pending){
+        if(pending.isHedged() || !node.isInFlight(pending)){
+            return;
+        }
+
+        // a legjobb olyan csomópont, amelynek van szabad helye a lekérési ablakában
+        Node target = null;
+        for(Node candidate: getNodesByScore()){
+            if(candidate != node && candidate.isReady()
+                    && candidate.getHeadersQuery() == null && candidate.getInFlightCount() < maxInFlight
+                    && !candidate.hasInFlight(pending.getHash())){
+                target = candidate;
+                break;
+            }
+        }
+
+        if(target == null || !takeHedgeBudget()){
+            return;
+        }
+
+        System.out.println(String.format("Ismételt lekérés: %s (%s -> %s)",
+                pending.getHash(), node.getSocketAddress(), target.getSocketAddress()));
+
+        GetDataMessage getDataMessage = new GetDataMessage(App.netParams);
+        addToGetData(getDataMessage, target, pending.getType(), pending.getHash());
+
+        Utils.Pending duplicate = new Utils.Pending(pending.getHash(), pending.getType());
+        pending.setHedged();
+        duplicate.setHedged();
+
+        target.addInFlight(duplicate);
+        sendMessageTo(getDataMessage, target);
+    }
+
+    private synchronized void earnHedgeBudget(int requests){
+        hedgeBudget = Math.min(hedgeBudget + requests * HEDGE_RATIO, HEDGE_BURST);
+    }
+
+    private synchronized boolean takeHedgeBudget(){
+        if(hedgeBudget < 1){
+            return false;
+        }
+
+        hedgeBudget -= 1;
+        return true;
+    }
+
+    /**
+     * A tartalom a csomóponttól megérkezett, így a többi csomópontnál függőben lévő ugyanilyen
+     * lekérést visszavonjuk.
+     *
+     * @param node
+     * @param hash
+     */
+    public void cancelDuplicates(Node node, Sha256Hash hash){
+        for(Node other: peers.getAll()){
+            if(other != node){
+                other.cancelInFlight(hash);
+            }
+        }
+    }
+
+    // a tartalmat más csomóponttól is lekértük-e, és az még függőben van
+    private boolean isInFlightAnywhere(Sha256Hash hash){
+        for(Node node: peers.getAll()){
+            if(node.hasInFlight(hash)){
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // a NodeManager szálán fut
+    private void requestTimedOut(Node node, Utils.Pending pending){
+        if(!node.expire(pending)){
+            return;
+        }
+
+        System.out.println(String.format("A lekérésre szánt idő lejárt. (%s)", node.getSocketAddress()));
+        queryFailed(pending);
+        wakeUp();
+    }
+
+    /**
+     * A sikertelen (lejárt vagy megszakadt kapcsolatú) lekérés tartalmát újból lekérendőnek jelöljük.
+     *
+     * @param pending
+     */
+    private void queryFailed(Utils.Pending pending){
+        // ha a tartalmat egy másik csomóponttól is lekértük, annak válaszára várunk
+        if(pending.getType() != Utils.Pending.HEADERS && isInFlightAnywhere(pending.getHash())){
+            return;
+        }
+
+        switch (pending.getType()){
+            case Utils.Pending.TRANSACTION:
+                TransactionManager.txHashes.queryIsFailed(pending.getHash());
+                break;
+            case Utils.Pending.BLOCK:
+                App.bm.blockHashes.queryIsFailed(pending.getHash());
+                break;
+            case Utils.Pending.HEADERS:
+                App.bm.headersQueryFailed(pending.getHash());
+                break;
+        }
+    }
+
+    /**
+     * A hiányzó blokkfejléceket kéri le a csomóponttól.
+     *
+     * @param node
+     */
+    private void queryHeaders(Node node){
+        // a csomópont a többitől eltérő tartományt kap; a lekérést a lokátor első hash értéke azonosítja
+        GetHeadersMessage getHeaders = App.bm.getMissingBlockHeaders(node.getBestHeight());
+
+        if(getHeaders != null){
+            node.setHeadersQuery(new Utils.Pending(getHeaders.getLocator().get(0), Utils.Pending.HEADERS));
+            sendMessageTo(getHeaders, node);
+        }
+    }
+
+    /**
+     * Hány újabb lekérés adható ki az adott típusból: a válaszoknak (a már függőben lévő összes lekérés
+     * válaszával együtt) el kell férniük a feldolgozó szakasz, valamint a TransactionManager bemeneti
+     * sorában. Ha nem férnek el, a csomópontoktól nem kérünk le több tartalmat, amíg a sorok ki nem
+     * ürülnek (a TransactionManager ekkor felébreszt), így a beérkező adatok mennyisége és a
+     * memóriahasználat korlátos marad.
+     *
+     * Csak az adott típusú függőben lévő lekérések csökkentik a krediteket. A szűrt blokk (merkleblock)
+     * a blokkok szakaszán két helyet foglal (a blokkfej beépítése és a tranzakciók átadása), a
+     * TransactionManager sorában viszont csak egyet.
+     *
+     * @param node a csomópont, amelytől a tartalmat lekérnénk
+     * @param type
+     * @return a csomóponttól még lekérhető tartalmak száma (a függőben lévő lekérésekkel csökkentve)
+     */
+    private int getCredits(Node node, int type){
+        int outstanding = 0;
+        int stageOutstanding = 0;
+        for(Node peer: peers.getAll()){
+            int count = peer.getInFlightCount(type);
+            outstanding += count;
+            stageOutstanding += count * getStageSlots(peer, type);
+        }
+
+        int stage = type == Utils.Pending.TRANSACTION ? MessagePipeline.TRANSACTIONS : MessagePipeline.BLOCKS;
+        int managerCredits = type == Utils.Pending.TRANSACTION ?
+                TransactionManager.getTxCredits() : TransactionManager.getBlockCredits();
+
+        int stageCredits = (pipeline.getStage(stage).getRemainingCapacity() - stageOutstanding)
+                / getStageSlots(node, type);
+
+        return Math.min(managerCredits - outstanding, stageCredits);
+    }
+
+    // a csomóponttól lekért tartalom hány helyet foglal a feldolgozó szakasz sorában
+    private int getStageSlots(Node node, int type){
+        return type == Utils.Pending.BLOCK && node.isBloomFilteringSupported() ? 2 : 1;
+    }
+
+    /**
+     * Legfeljebb max darab tranzakció vagy blokk tartalmát kéri le a csomóponttól egyetlen getdata
+     * üzenetben. Az egyes tartalmak lekérését külön-külön tartjuk nyilván, így időtúllépés esetén
+     * csak a meg nem érkezett tartalmakat kérjük le újból.
+     *
+     * @param node
+     * @param type
+     * @param max
+     * @return a sorból kivett (lekért vagy a gyorsítótárból kiszolgált) hash értékek száma
+     */
+    private int queryData(Node node, int type, int max){
+        Utils.QueryQueue queue = type == Utils.Pending.TRANSACTION ? TransactionManager.txHashes : App.bm.blockHashes;
+        List<Sha256Hash> hashes = queue.getNextHashes(max);
+
+        GetDataMessage getDataMessage = new GetDataMessage(App.netParams);
+        long filterTag = App.am.getFilterTag();
+
+        for(Sha256Hash hash: hashes){
+            // ha a blokkot korábban már letöltöttük, a gyorsítótárból szolgáljuk ki
+            if(type == Utils.Pending.BLOCK){
+                BlockTransactions cachedBlock = App.bm.getCachedBlock(hash, filterTag);
+                if(cachedBlock != null){
+                    if(TransactionManager.addBlockForConfirmation(cachedBlock)){
+                        queue.queryIsDone(hash);
+                    }else{
+                        queue.queryIsFailed(hash);
+                    }
+                    continue;
+                }
+            }
+
+            addToGetData(getDataMessage, node, type, hash);
+            node.addInFlight(new Utils.Pending(hash, type));
+        }
+
+        // üzenet elküldése
+        if(!getDataMessage.getItems().isEmpty()){
+            earnHedgeBudget(getDataMessage.getItems().size());
+            sendMessageTo(getDataMessage, node);
+        }
+
+        return hashes.size();
+    }
+
+    private void addToGetData(GetDataMessage getDataMessage, Node node, int type, Sha256Hash hash){
+        if(type == Utils.Pending.TRANSACTION){
+            getDataMessage.addTransaction(hash);
+        }
+        // a Bloom-szűrőt támogató csomóponttól csak a szűrt blokkot (merkleblock) és a szűrőnknek
+        // megfelelő tranzakciókat kérjük le
+        else if(node.isBloomFilteringSupported()){
+            getDataMessage.addFilteredBlock(hash);
+        }else{
+            getDataMessage.addBlock(hash);
+        }
+    }
+
+    /**
+     * Üzenet küldése meghatározott csomópontnak.
+     *
+     * @param message
+     * @param node
+     */
+    private void sendMessageTo(Message message, Node node){
+        if(node.isConnected()){
+            node.sendMessage(message);
+        }else{
+            System.out.println(String.format("%s már nem tudunk üzenetet küldeni.", node.getSocketAddress()));
+        }
+    }
+}
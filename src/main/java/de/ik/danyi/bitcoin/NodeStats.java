@@ -0,0 +1,150 @@
+package de.ik.danyi.bitcoin;
+
+/**
+ * Egy csomópont teljesítményének statisztikái, amelyek alapján a lekéréseket a legjobb csomópontoknak
+ * osztjuk ki, a leggyengébbeket pedig újabb csomópontokra cseréljük:
+ * - a lekérések válaszidejének hisztogramja (kettő hatványai szerinti ms-os rekeszekkel),
+ * - a válaszok átviteli sebessége (bájt/s, exponenciálisan simított átlag),
+ * - az időtúllépések aránya (exponenciálisan simított átlag),
+ * - a ping üzenetekkel mért hálózati körülfordulási idő (RTT).
+ */
+public class NodeStats {
+
+    // a hisztogram rekeszeinek száma: [0, 1), [1, 2), [2, 4), ... ms, az utolsó rekesz a felső határ nélküli
+    private static final int BUCKETS = 20;
+
+    // a simított átlagok súlya az új mérésre
+    private static final double ALPHA = 0.2;
+
+    // a pontozáshoz legalább ennyi lekérés eredményére van szükség
+    public static final int MIN_SAMPLES = 8;
+
+    // a pontozásnál egy lekérés feltételezett mérete (bájt)
+    private static final double TYPICAL_RESPONSE_BYTES = 20000;
+
+    private final long[] latencyHistogram = new long[BUCKETS];
+    private long latencyCount = 0;
+
+    private double bytesPerSecond = -1;
+    private long bytesSinceLastResponse = 0;
+
+    private double timeoutRate = 0;
+    private long responses = 0;
+    private long timeouts = 0;
+
+    private double pingRtt = -1;
+
+    /**
+     * A csomóponttól beérkezett bájtok számának rögzítése.
+     *
+     * @param bytes
+     */
+    public synchronized void recordBytes(long bytes){
+        bytesSinceLastResponse += bytes;
+    }
+
+    /**
+     * Egy lekérésre beérkezett válasz rögzítése.
+     *
+     * @param latency a lekérés indulása óta eltelt idő (ms)
+     * @param serviceTime az előző válasz (vagy a lekérés indulása, ha az későbbi) óta eltelt idő (ms)
+     */
+    public synchronized void recordResponse(long latency, long serviceTime){
+        latencyHistogram[bucket(latency)]++;
+        latencyCount++;
+        responses++;
+
+        // az előző válasz óta beérkezett bájtok és az eltelt idő alapján az átviteli sebesség
+        double sample = bytesSinceLastResponse * 1000.0 / Math.max(serviceTime, 1);
+        bytesPerSecond = bytesPerSecond < 0 ? sample : (1 - ALPHA) * bytesPerSecond + ALPHA * sample;
+        bytesSinceLastResponse = 0;
+
+        timeoutRate = (1 - ALPHA) * timeoutRate;
+    }
+
+    public synchronized void recordTimeout(){
+        timeouts++;
+        timeoutRate = (1 - ALPHA) * timeoutRate + ALPHA;
+    }
+
+    public synchronized void recordPing(long rtt){
+        pingRtt = pingRtt < 0 ? rtt : (1 - ALPHA) * pingRtt + ALPHA * rtt;
+    }
+
+    private static int bucket(long latency){
+        int bucket = latency < 1 ? 0 : 64 - Long.numberOfLeadingZeros(latency);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * A válaszidő p-edik kvantilisének (0 < p <= 1) felső becslése (ms) a hisztogram alapján, vagy -1,
+     * ha még nincs mérés.
+     *
+     * @param p
+     * @return
+     */
+    public synchronized long getLatencyPercentile(double p){
+        if(latencyCount == 0){
+            return -1;
+        }
+
+        long rank = (long)Math.ceil(p * latencyCount);
+        long count = 0;
+
+        for(int i=0; i<BUCKETS; ++i){
+            count += latencyHistogram[i];
+            if(count >= rank){
+                return 1L << i;
+            }
+        }
+
+        return 1L << (BUCKETS - 1);
+    }
+
+    public synchronized double getBytesPerSecond(){
+        return bytesPerSecond;
+    }
+
+    public synchronized double getTimeoutRate(){
+        return timeoutRate;
+    }
+
+    public synchronized long getPingRtt(){
+        return (long)pingRtt;
+    }
+
+    /**
+     * Van-e már elég mérés a csomópont pontozásához.
+     *
+     * @return
+     */
+    public synchronized boolean hasEnoughSamples(){
+        return responses + timeouts >= MIN_SAMPLES;
+    }
+
+    /**
+     * A csomópont pontszáma (nagyobb a jobb): a várható lekérésenkénti idő reciproka. A várható idő
+     * a medián válaszidő (ennek hiányában a ping RTT) és egy tipikus válasz átviteli ideje, amelyet
+     * az időtúllépések arányával büntetünk. Mérés hiányában semleges pontszámot adunk.
+     *
+     * @return
+     */
+    public synchronized double getScore(){
+        double latency = latencyCount > 0 ? getLatencyPercentile(0.5) : pingRtt;
+        if(latency < 0){
+            latency = 500;
+        }
+
+        double transferTime = bytesPerSecond > 0 ? TYPICAL_RESPONSE_BYTES * 1000.0 / bytesPerSecond : 0;
+        double expectedTime = (latency + transferTime) * (1 + 4 * timeoutRate);
+
+        return 1000.0 / Math.max(expectedTime, 1);
+    }
+
+    @Override
+    public synchronized String toString(){
+        return String.format("p50: %d ms, p95: %d ms, %.1f kB/s, időtúllépés: %.0f%%, ping: %d ms, pontszám: %.2f",
+                getLatencyPercentile(0.5), getLatencyPercentile(0.95), bytesPerSecond / 1000,
+                timeoutRate * 100, getPingRtt(), getScore());
+    }
+}
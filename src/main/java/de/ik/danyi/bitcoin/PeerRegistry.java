@@ -0,0 +1,124 @@
+package de.ik.danyi.bitcoin;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A csomópontok szálbiztos nyilvántartása. A csomópontokat a hálózati szálak (kapcsolódás, kézfogás,
+ * kapcsolatbontás) és a NodeManager szála egyszerre módosítják, illetve járják be.
+ *
+ * A csomópontokat a címük szerint egy ConcurrentHashMap tárolja (konstans idejű keresés), a bejáráshoz
+ * pedig minden módosításkor egy új, nem módosítható pillanatképet készítünk (copy-on-write), így a
+ * bejárás zárolás nélküli, és a közben történő módosítások nem zavarják meg.
+ */
+public class PeerRegistry {
+
+    private final ConcurrentHashMap<InetSocketAddress, Node> peers;
+
+    // a csomópontok aktuális pillanatképe
+    private volatile List<Node> snapshot;
+
+    public PeerRegistry(){
+        peers = new ConcurrentHashMap<InetSocketAddress, Node>();
+        snapshot = Collections.emptyList();
+    }
+
+    /**
+     * A csomópont felvétele, ha a címével még nincs nyilvántartott csomópont.
+     *
+     * @param node
+     * @return
+     */
+    public boolean add(Node node){
+        if(peers.putIfAbsent(node.getSocketAddress(), node) != null){
+            return false;
+        }
+
+        refresh();
+        return true;
+    }
+
+    /**
+     * A csomópont törlése (csak ha a címén még ugyanez a csomópont van nyilvántartva).
+     *
+     * @param node
+     * @return
+     */
+    public boolean remove(Node node){
+        if(!peers.remove(node.getSocketAddress(), node)){
+            return false;
+        }
+
+        refresh();
+        return true;
+    }
+
+    public Node get(InetSocketAddress socketAddress){
+        return peers.get(socketAddress);
+    }
+
+    public boolean contains(InetSocketAddress socketAddress){
+        return peers.containsKey(socketAddress);
+    }
+
+    /**
+     * Az összes nyilvántartott csomópont pillanatképe (bármely állapotban).
+     *
+     * @return
+     */
+    public List<Node> getAll(){
+        return snapshot;
+    }
+
+    /**
+     * A lekérdezésre kész (a kézfogáson túljutott, kapcsolódott) csomópontok.
+     *
+     * @return
+     */
+    public List<Node> getReady(){
+        List<Node> ready = new ArrayList<Node>();
+
+        for(Node node: snapshot){
+            if(node.getState() == Node.State.READY){
+                ready.add(node);
+            }
+        }
+
+        return ready;
+    }
+
+    /**
+     * Az adott állapotú csomópontok száma.
+     *
+     * @param states
+     * @return
+     */
+    public int count(Node.State... states){
+        int num = 0;
+
+        for(Node node: snapshot){
+            Node.State state = node.getState();
+            for(Node.State s: states){
+                if(state == s){
+                    ++num;
+                    break;
+                }
+            }
+        }
+
+        return num;
+    }
+
+    public int size(){
+        return snapshot.size();
+    }
+
+    // a módosítások után az új pillanatkép elkészítése; a zárolás miatt az utolsó elkészült
+    // pillanatkép minden korábbi módosítást tartalmaz
+    private synchronized void refresh(){
+        snapshot = Collections.unmodifiableList(new ArrayList<Node>(peers.values()));
+    }
+}
@@ -0,0 +1,70 @@
+package de.ik.danyi.bitcoin;
+
+/**
+ * Egy csomópont válaszidejének becslése a TCP újraküldési időkorlátjának számításához hasonlóan
+ * (RFC 6298): a mért válaszidők simított átlagából (SRTT) és szórásából (RTTVAR) az időkorlát
+ * SRTT + 4 * RTTVAR. Időtúllépés esetén az időkorlátot a következő sikeres mérésig duplázzuk.
+ *
+ * Mérés hiányában a hívó által megadott legnagyobb időkorlátot használjuk.
+ */
+public class RttEstimator {
+
+    // az időkorlát legkisebb értéke (ms)
+    private static final long MIN_TIMEOUT = 250;
+
+    // a duplázások legnagyobb száma
+    private static final int MAX_BACKOFF = 6;
+
+    private double srtt = -1;
+    private double rttvar = 0;
+    private int backoff = 0;
+
+    /**
+     * Egy mért válaszidő (ms) felvétele.
+     *
+     * @param rtt
+     */
+    public synchronized void sample(long rtt){
+        if(srtt < 0){
+            srtt = rtt;
+            rttvar = rtt / 2.0;
+        }else{
+            rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rtt);
+            srtt = 0.875 * srtt + 0.125 * rtt;
+        }
+
+        backoff = 0;
+    }
+
+    /**
+     * Időtúllépés történt, így a következő lekérésekre hosszabb időt hagyunk.
+     */
+    public synchronized void backoff(){
+        backoff = Math.min(backoff + 1, MAX_BACKOFF);
+    }
+
+    /**
+     * A lekérésre szánt időkorlát (ms).
+     *
+     * @param maxTimeout
+     * @return
+     */
+    public synchronized long getTimeout(long maxTimeout){
+        if(srtt < 0){
+            return maxTimeout;
+        }
+
+        long timeout = Math.max((long)(srtt + 4 * rttvar), MIN_TIMEOUT) << backoff;
+
+        return Math.min(timeout, maxTimeout);
+    }
+
+    /**
+     * A simított válaszidő (ms), vagy -1, ha még nincs mérés.
+     *
+     * @return
+     */
+    public synchronized long getSmoothedRtt(){
+        return (long)srtt;
+    }
+}
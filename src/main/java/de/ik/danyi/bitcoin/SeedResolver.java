@@ -0,0 +1,31 @@
+package de.ik.danyi.bitcoin;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * A DNS szerverek (seed) neveinek feloldása csomópont címekre. Az alapértelmezett megvalósítás
+ * (SYSTEM) a rendszer névfeloldóját használja; helyette (pl. teszteléshez) más megvalósítás is
+ * megadható a NodeManager számára.
+ */
+public interface SeedResolver {
+
+    /**
+     * A rendszer névfeloldója (InetAddress.getAllByName).
+     */
+    SeedResolver SYSTEM = new SeedResolver() {
+        @Override
+        public InetAddress[] resolve(String seed) throws UnknownHostException {
+            return InetAddress.getAllByName(seed);
+        }
+    };
+
+    /**
+     * A DNS szerver nevének feloldása; a hívás blokkolhat.
+     *
+     * @param seed
+     * @return a DNS szerver által nyilvántartott csomópont címek
+     * @throws UnknownHostException
+     */
+    InetAddress[] resolve(String seed) throws UnknownHostException;
+}
@@ -0,0 +1,155 @@
+package de.ik.danyi.bitcoin;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Időzítő kerék (hashed timing wheel) a lekérések időkorlátjainak kezeléséhez. A kerék wheelSize
+ * darab rekeszből áll, egy rekesz tickMillis ideig tart; egy időzítés a lejárati idejének megfelelő
+ * rekeszbe kerül (a kerék teljes körülfordulásainál hosszabb időzítéseknél a hátralévő körök számával).
+ * Egy tick során csak az aktuális rekeszt kell végignézni, így az időzítések felvétele és törlése
+ * konstans idejű, és ha nincs lejáró időzítés, az ellenőrzés semmibe sem kerül.
+ *
+ * Az időt a monoton System.nanoTime alapján mérjük, így a rendszeridő átállítása nem befolyásolja.
+ * A lejárt időzítések feladatai a kerék saját szálán futnak, ezért rövidnek kell lenniük, és a hívó
+ * állapotával semmilyen szinkronizációban nincsenek: a feladatnak magának kell gondoskodnia arról, hogy
+ * csak szálbiztos módon (pl. atomi változókkal, vagy a saját szálára átadva) érje el az állapotot.
+ * A NodeManager a lekérések időkorlátjait ezért a saját szálára adja át.
+ */
+public class TimingWheel implements Runnable {
+
+    /**
+     * Egy ütemezett időzítés; a lejárata előtt visszavonható.
+     */
+    public static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled = false;
+
+        private Timeout(Runnable task, long deadline){
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public void cancel(){
+            cancelled = true;
+        }
+
+        public boolean isCancelled(){
+            return cancelled;
+        }
+    }
+
+    private final Thread thread;
+
+    private final long tickNanos;
+    private final List<ArrayDeque<Timeout>> wheel;
+    private final int mask;
+
+    // a más szálakról ütemezett időzítések, amelyeket a kerék szála a következő tick-kor helyez el
+    private final ConcurrentLinkedQueue<Timeout> newTimeouts;
+
+    private final long startTime;
+    private long tick = 0;
+
+    /**
+     * @param tickMillis egy rekesz hossza (az időzítések pontossága)
+     * @param wheelSize a rekeszek száma (2 hatványára kerekítjük)
+     */
+    public TimingWheel(long tickMillis, int wheelSize){
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+
+        tickNanos = tickMillis * 1000000L;
+        wheel = new ArrayList<ArrayDeque<Timeout>>(size);
+        mask = size - 1;
+
+        for(int i=0; i<size; ++i){
+            wheel.add(new ArrayDeque<Timeout>());
+        }
+
+        newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+        startTime = System.nanoTime();
+
+        thread = new Thread(this, "TimingWheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * A feladat ütemezése a megadott idő elteltére.
+     *
+     * @param delayMillis
+     * @param task
+     * @return az időzítés, amely a feladat lefutása előtt visszavonható
+     */
+    public Timeout schedule(long delayMillis, Runnable task){
+        Timeout timeout = new Timeout(task, System.nanoTime() + delayMillis * 1000000L);
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public void run() {
+        while (true){
+            // várakozás a következő tick kezdetéig
+            long sleepNanos = startTime + (tick + 1) * tickNanos - System.nanoTime();
+            if(sleepNanos > 0){
+                try {
+                    Thread.sleep(sleepNanos / 1000000L, (int)(sleepNanos % 1000000L));
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
+                }
+            }
+
+            transferNewTimeouts();
+            expireTimeouts(wheel.get((int)(tick & mask)));
+            tick++;
+        }
+    }
+
+    // az újonnan ütemezett időzítések elhelyezése a lejárati idejüknek megfelelő rekeszben
+    private void transferNewTimeouts(){
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null){
+            if(timeout.cancelled){
+                continue;
+            }
+
+            // a már lejárt időzítések az aktuális rekeszbe kerülnek
+            long ticks = Math.max((timeout.deadline - startTime) / tickNanos, tick);
+
+            timeout.remainingRounds = (ticks - tick) / wheel.size();
+            wheel.get((int)(ticks & mask)).add(timeout);
+        }
+    }
+
+    private void expireTimeouts(ArrayDeque<Timeout> bucket){
+        long now = System.nanoTime();
+
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()){
+            Timeout timeout = iterator.next();
+
+            if(timeout.cancelled){
+                iterator.remove();
+            }
+            else if(timeout.remainingRounds <= 0 && timeout.deadline <= now){
+                iterator.remove();
+
+                try {
+                    timeout.task.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            else if(timeout.remainingRounds > 0){
+                timeout.remainingRounds--;
+            }
+        }
+    }
+}
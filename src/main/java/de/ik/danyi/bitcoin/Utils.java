@@ -1,198 +1,401 @@
-package de.ik.danyi.bitcoin;
-
-import org.bitcoinj.core.Coin;
-import org.bitcoinj.core.Sha256Hash;
-
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.TimeZone;
-
-/**
- * Created by Imre Danyi on 2015.04.14..
- */
-public class Utils {
-
-    /**
-     * Kettős SHA256 hashelést végrehajtó függvény.
-     * @param input
-     * @return
-     */
-    public static byte[] doubleSHA256(byte[] input){
-
-        byte[] out = null;
-
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            digest.update(input, 0, input.length);
-            byte[] first = digest.digest();
-
-            out = digest.digest(first);
-
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        }
-
-        return out;
-    }
-
-    public static String convertToISO8601(long millis){
-        TimeZone tz = TimeZone.getTimeZone("UTC");
-        DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm'Z'");
-        df.setTimeZone(tz);
-        return df.format(new Date(millis));
-    }
-
-    /**
-     * Két Bitcoin érme összeadását végzi.
-     * @param c1
-     * @param c2
-     * @return
-     */
-    public static Coin addCoin(Coin c1, Coin c2){
-        long c1Value = c1.getValue();
-        long c2Value = c2.getValue();
-        long value = c1Value + c2Value;
-        return Coin.valueOf(value);
-    }
-
-    /**
-     * c1 érméből kivonja a c2 érmét.
-     * @param c1
-     * @param c2
-     * @return
-     */
-    public static Coin subCoin(Coin c1, Coin c2){
-        long c1Value = c1.getValue();
-        long c2Value = c2.getValue();
-        long value = c1Value-c2Value;
-        return Coin.valueOf(value);
-    }
-
-    /**
-     * Minden csomópont esetében az éppen aktuális (függőben lévő) lekérést regisztráljuk ezzel, egy
-     * időkorláttal ellátva. A lekérés vonatkozhat konkrét tranzakció vagy blokk tartalmának,
-     * valamint hiányzó blokkfejlécek lekérésére. Blokkfejlécek esetében a lekérendő tartomány
-     * kezdő hash értéke kerül eltárolásra.
-     */
-    public static class Pending{
-
-        public static final int TRANSACTION = 1;
-        public static final int BLOCK = 2;
-        public static final int HEADERS = 3;
-
-        // a lekérés indulási ideje
-        private long startTime;
-        private Sha256Hash hash;
-        private int type = 0;
-
-        public Pending(Sha256Hash hash, int type){
-            this.hash = hash;
-            this.type = type;
-            startTime = System.currentTimeMillis();
-        }
-
-        // az adott csomóponttól érkező válasz erre a lekérésre adott válasz-e
-        public boolean isReceived(Sha256Hash receivedHash){
-            if(hash.equals(receivedHash)){
-                System.out.println(String.format("Beérkező %s: %s",
-                        type == TRANSACTION ? "tranzakció" : "blokk",
-                        receivedHash.toString()));
-                return true;
-            }else{
-                return false;
-            }
-        }
-
-        // megvizsgálja, hogy lejárt-e már a lekérésre szánt időkorlát
-        // az időkorlátot a NodeManager példányosításával definiáljuk
-        public boolean isTimeout(long timeLimit){
-            long currentTime = System.currentTimeMillis();
-
-            // lejárt az időkorlát
-            if((currentTime - startTime) > timeLimit){
-                return true;
-            }else{
-                return false;
-            }
-        }
-
-        public int getType(){
-            return type;
-        }
-
-        public Sha256Hash getHash(){
-            return hash;
-        }
-    }
-
-
-    /**
-     * A lekérendő tranzakciók, blokkok hash értékeit tároló osztály; sikeres és sikertelen lekérés
-     * esetén is beállítja a következő lekérendő tranzakciót/blokkot.
-     */
-    public static class QueryQueue{
-
-        // 0: lekért, 1: lekérendő
-        private LinkedHashMap<Sha256Hash, Integer> linkedHashMap;
-
-        public QueryQueue(){
-            linkedHashMap = new LinkedHashMap<Sha256Hash, Integer>();
-        }
-
-        public synchronized boolean addHash(Sha256Hash hash){
-            if(!linkedHashMap.containsKey(hash)){
-                linkedHashMap.put(hash, 1);
-                return true;
-            }
-
-            return false;
-        }
-
-        public synchronized Sha256Hash getNextHash(){
-            for(Map.Entry<Sha256Hash, Integer> hash: linkedHashMap.entrySet()){
-                if(hash.getValue() == 1){
-                    // az adott hash értékhez tartozó tartalmat lekértnek jelöljük
-                    hash.setValue(0);
-                    return hash.getKey();
-                }
-            }
-
-            return null;
-        }
-
-
-        private boolean setQueryStatus(Sha256Hash hash, int status){
-
-            boolean isReplaced = false;
-
-            if(linkedHashMap.containsKey(hash)){
-                isReplaced = linkedHashMap.replace(hash, linkedHashMap.get(hash), status);
-            }
-
-            return isReplaced;
-        }
-
-        public synchronized boolean queryIsDone(Sha256Hash hash){
-            System.out.println(hash + " le lett kérve.");
-            return setQueryStatus(hash, 0);
-        }
-
-        public synchronized boolean queryIsFailed(Sha256Hash hash){
-            System.out.println(hash + " újból lekérendő.");
-            return setQueryStatus(hash, 1);
-        }
-
-        // minden lekérendő tartalmat lekértünk-e
-        public synchronized boolean isDone(){
-            return !linkedHashMap.containsValue(1);
-        }
-
-    }
-
-
-}
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Created by Imre Danyi on 2015.04.14..
+ */
+public class Utils {
+
+    /**
+     * Kettős SHA256 hashelést végrehajtó függvény.
+     * @param input
+     * @return
+     */
+    public static byte[] doubleSHA256(byte[] input){
+
+        byte[] out = null;
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(input, 0, input.length);
+            byte[] first = digest.digest();
+
+            out = digest.digest(first);
+
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+        }
+
+        return out;
+    }
+
+    public static String convertToISO8601(long millis){
+        TimeZone tz = TimeZone.getTimeZone("UTC");
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm'Z'");
+        df.setTimeZone(tz);
+        return df.format(new Date(millis));
+    }
+
+    /**
+     * Két Bitcoin érme összeadását végzi.
+     * @param c1
+     * @param c2
+     * @return
+     */
+    public static Coin addCoin(Coin c1, Coin c2){
+        long c1Value = c1.getValue();
+        long c2Value = c2.getValue();
+        long value = c1Value + c2Value;
+        return Coin.valueOf(value);
+    }
+
+    /**
+     * c1 érméből kivonja a c2 érmét.
+     * @param c1
+     * @param c2
+     * @return
+     */
+    public static Coin subCoin(Coin c1, Coin c2){
+        long c1Value = c1.getValue();
+        long c2Value = c2.getValue();
+        long value = c1Value-c2Value;
+        return Coin.valueOf(value);
+    }
+
+    /**
+     * A fájl leképzésének azonnali megszüntetése (a leképzést különben csak a szemétgyűjtő szünteti meg,
+     * így a fájl bővítésekor keletkező régi leképzések felhalmozódnának). A hívónak biztosítania kell, hogy
+     * a pufferre (és a belőle képzett nézetekre) a továbbiakban senki ne hivatkozzon.
+     *
+     * Java 9-től a sun.misc.Unsafe.invokeCleaner, Java 8-ban a puffer Cleaner objektuma végzi; ha egyik sem
+     * érhető el, a leképzést a szemétgyűjtőre hagyjuk.
+     *
+     * @param buffer
+     */
+    public static void unmap(MappedByteBuffer buffer){
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                invokeCleaner = null;
+            }
+
+            if(invokeCleaner != null){
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            }else{
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if(cleaner != null){
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A csomópontoknak kiküldött (függőben lévő) lekéréseket regisztráljuk ezzel, egy
+     * időkorláttal (lásd TimingWheel) ellátva. A lekérés vonatkozhat konkrét tranzakció vagy blokk tartalmának,
+     * valamint hiányzó blokkfejlécek lekérésére. Blokkfejlécek esetében a lekérendő tartomány
+     * kezdő hash értéke kerül eltárolásra.
+     */
+    public static class Pending{
+
+        public static final int TRANSACTION = 1;
+        public static final int BLOCK = 2;
+        public static final int HEADERS = 3;
+
+        // a lekérés indulási ideje (System.nanoTime)
+        private long startTime;
+        private Sha256Hash hash;
+        private int type = 0;
+
+        // a lekérés időkorlátjának időzítése
+        private TimingWheel.Timeout timeout = null;
+
+        // az ismételt (másik csomópontnak is elküldött) lekérés időzítése, valamint, hogy a tartalmat
+        // már egy másik csomóponttól is lekértük-e
+        private TimingWheel.Timeout hedgeTimeout = null;
+        private volatile boolean hedged = false;
+
+        public Pending(Sha256Hash hash, int type){
+            this.hash = hash;
+            this.type = type;
+            startTime = System.nanoTime();
+        }
+
+        // az adott csomóponttól érkező válasz erre a lekérésre adott válasz-e
+        public boolean isReceived(Sha256Hash receivedHash){
+            return hash.equals(receivedHash);
+        }
+
+        public long getStartTime(){
+            return startTime;
+        }
+
+        public void setTimeout(TimingWheel.Timeout timeout){
+            this.timeout = timeout;
+        }
+
+        public void setHedgeTimeout(TimingWheel.Timeout hedgeTimeout){
+            this.hedgeTimeout = hedgeTimeout;
+        }
+
+        public boolean isHedged(){
+            return hedged;
+        }
+
+        public void setHedged(){
+            hedged = true;
+        }
+
+        // a lekérés befejeződött, így az időkorlátjának és az ismételt lekérésének időzítését visszavonjuk
+        public void cancelTimeout(){
+            if(timeout != null){
+                timeout.cancel();
+            }
+            if(hedgeTimeout != null){
+                hedgeTimeout.cancel();
+            }
+        }
+
+        public int getType(){
+            return type;
+        }
+
+        public Sha256Hash getHash(){
+            return hash;
+        }
+    }
+
+
+    /**
+     * A lekérendő tranzakciók, blokkok hash értékeit tároló osztály; sikeres és sikertelen lekérés
+     * esetén is beállítja a következő lekérendő tranzakciót/blokkot.
+     *
+     * A lekérendő hash értékek egy sorban (ready), az összes ismert hash érték állapota egy hash táblában
+     * található, így a műveletek a sor hosszától függetlenül konstans időben futnak. A sorból a közben
+     * más állapotba került hash értékeket a kivételkor hagyjuk ki; ha az ilyen (elavult) bejegyzések
+     * száma a lekérendőkéhez képest túl nagy, a sort tömörítjük, így a sor hossza korlátos marad.
+     *
+     * A lekért (kész) hash értékek közül legfeljebb MAX_DONE darabot tartunk meg, hogy egy már lekért
+     * tartalmat ne kérjünk le újból. A kész hash értékeket a legutóbbi használat (lekérés vagy újbóli
+     * bejelentés) szerint tartjuk nyilván, és a legrégebben használtakat felejtjük el; a csomópontok által
+     * továbbra is bejelentett hash értékek így nem kerülnek ki, és nem kérjük le őket újból.
+     */
+    public static class QueryQueue{
+
+        // a megtartott, lekért hash értékek legnagyobb száma
+        private static final int MAX_DONE = 100000;
+
+        // a sor tömörítése előtt legalább ennyi elavult bejegyzést tűrünk el
+        private static final int MIN_STALE_FOR_COMPACTION = 1024;
+
+        private static final int READY = 1;
+        private static final int REQUESTED = 2;
+        private static final int DONE = 3;
+
+        private final Map<Sha256Hash, Integer> states;
+        private ArrayDeque<Sha256Hash> ready;
+
+        // a kész hash értékek a legrégebben használt elöl
+        private final LinkedHashSet<Sha256Hash> done;
+
+        private final int maxDone;
+
+        // a lekérendő hash értékek száma; zárolás nélkül is olvasható
+        private volatile int readyCount = 0;
+
+        public QueryQueue(){
+            this(MAX_DONE);
+        }
+
+        // a korlát a tesztekhez megadható
+        QueryQueue(int maxDone){
+            this.maxDone = maxDone;
+
+            states = new HashMap<Sha256Hash, Integer>();
+            ready = new ArrayDeque<Sha256Hash>();
+            done = new LinkedHashSet<Sha256Hash>();
+        }
+
+        public synchronized boolean addHash(Sha256Hash hash){
+            Integer state = states.get(hash);
+
+            if(state != null){
+                // a már lekért hash érték újbóli bejelentése: a bejegyzés továbbra is használatban van
+                if(state == DONE){
+                    done.remove(hash);
+                    done.add(hash);
+                }
+                return false;
+            }
+
+            setReady(hash);
+            return true;
+        }
+
+        public Sha256Hash getNextHash(){
+            List<Sha256Hash> hashes = getNextHashes(1);
+            return hashes.isEmpty() ? null : hashes.get(0);
+        }
+
+        /**
+         * Legfeljebb max darab lekérendő hash érték, amelyeket egyúttal lekértnek jelölünk; így egyetlen
+         * getdata üzenetben több tartalmat is lekérhetünk.
+         *
+         * @param max
+         * @return
+         */
+        public List<Sha256Hash> getNextHashes(int max){
+            List<Sha256Hash> hashes = new ArrayList<Sha256Hash>();
+
+            if(readyCount == 0){
+                return hashes;
+            }
+
+            synchronized (this){
+                while (hashes.size() < max && !ready.isEmpty()){
+                    Sha256Hash hash = ready.poll();
+
+                    // a sorba került, de közben más állapotba került hash értékeket kihagyjuk
+                    Integer state = states.get(hash);
+                    if(state == null || state != READY){
+                        continue;
+                    }
+
+                    // az adott hash értékhez tartozó tartalmat lekértnek jelöljük
+                    states.put(hash, REQUESTED);
+                    readyCount--;
+                    hashes.add(hash);
+                }
+            }
+
+            return hashes;
+        }
+
+        public boolean queryIsDone(Sha256Hash hash){
+            boolean isReplaced;
+
+            synchronized (this){
+                Integer state = states.get(hash);
+                isReplaced = state != null;
+
+                if(isReplaced && state != DONE){
+                    // a sorban maradt bejegyzés elavulttá válik
+                    if(state == READY){
+                        readyCount--;
+                        compactIfNeeded();
+                    }
+                    setDone(hash);
+                }
+            }
+
+            return isReplaced;
+        }
+
+        public boolean queryIsFailed(Sha256Hash hash){
+            boolean isReplaced;
+
+            synchronized (this){
+                Integer state = states.get(hash);
+                isReplaced = state != null;
+
+                if(isReplaced && state != READY){
+                    if(state == DONE){
+                        done.remove(hash);
+                    }
+                    setReady(hash);
+                    compactIfNeeded();
+                }
+            }
+
+            return isReplaced;
+        }
+
+        // minden lekérendő tartalmat lekértünk-e
+        public boolean isDone(){
+            return readyCount == 0;
+        }
+
+        // a sor bejegyzéseinek száma (az elavultakkal együtt) és a megtartott hash értékek száma a tesztekhez
+        synchronized int getQueueLength(){
+            return ready.size();
+        }
+
+        synchronized int getKnownCount(){
+            return states.size();
+        }
+
+        private void setReady(Sha256Hash hash){
+            states.put(hash, READY);
+            ready.add(hash);
+            readyCount++;
+        }
+
+        private void setDone(Sha256Hash hash){
+            states.put(hash, DONE);
+            done.add(hash);
+
+            // a legrégebben használt kész hash értékeket elfelejtjük
+            Iterator<Sha256Hash> iterator = done.iterator();
+            while (done.size() > maxDone){
+                states.remove(iterator.next());
+                iterator.remove();
+            }
+        }
+
+        /**
+         * Ha a sorban az elavult bejegyzések száma meghaladja a lekérendőkét (és egy minimális értéket),
+         * a sort újraépítjük a lekérendő hash értékekkel, az eredeti sorrendben, ismétlődés nélkül.
+         */
+        private void compactIfNeeded(){
+            int stale = ready.size() - readyCount;
+            if(stale < MIN_STALE_FOR_COMPACTION || stale <= readyCount){
+                return;
+            }
+
+            ArrayDeque<Sha256Hash> compacted = new ArrayDeque<Sha256Hash>(Math.max(16, readyCount));
+            Set<Sha256Hash> seen = new HashSet<Sha256Hash>();
+
+            for(Sha256Hash hash: ready){
+                Integer state = states.get(hash);
+                if(state != null && state == READY && seen.add(hash)){
+                    compacted.add(hash);
+                }
+            }
+
+            ready = compacted;
+        }
+    }
+
+
+}
@@ -0,0 +1,101 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * A fő lánc indexének tesztjei: a bejegyzéseknek a fájl újbóli megnyitása után is meg kell maradniuk.
+ */
+public class BestChainIndexTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("bestchain", ".idx");
+        file.delete();
+    }
+
+    @After
+    public void tearDown(){
+        file.delete();
+    }
+
+    private static Sha256Hash hash(int height){
+        return Sha256Hash.create(("blokk " + height).getBytes());
+    }
+
+    @Test
+    public void entriesSurviveReopen() throws Exception {
+        BestChainIndex index = new BestChainIndex(file);
+        for(int h = 1000; h <= 1100; ++h){
+            index.put(h, hash(h));
+        }
+        index.close();
+
+        BestChainIndex reopened = new BestChainIndex(file);
+        assertEquals(1100, reopened.getHeight());
+        assertEquals(1000, reopened.getStartHeight());
+        assertEquals(hash(1050), reopened.get(1050));
+        assertTrue(reopened.contains(1100, hash(1100)));
+        assertNull(reopened.get(999));
+        reopened.close();
+    }
+
+    @Test
+    public void truncateIsPersisted() throws Exception {
+        BestChainIndex index = new BestChainIndex(file);
+        for(int h = 0; h <= 10; ++h){
+            index.put(h, hash(h));
+        }
+        index.truncate(5);
+        index.close();
+
+        BestChainIndex reopened = new BestChainIndex(file);
+        assertEquals(5, reopened.getHeight());
+        assertNull(reopened.get(6));
+        assertFalse(reopened.contains(10, hash(10)));
+        reopened.close();
+    }
+
+    @Test
+    public void fillingBackwardsGrowsDownAndKeepsEntries() throws Exception {
+        BestChainIndex index = new BestChainIndex(file);
+
+        // a lánccsúcstól visszafelé töltjük fel, mint az első indításkor
+        for(int h = 200000; h >= 0; --h){
+            index.put(h, hash(h));
+        }
+
+        assertEquals(0, index.getStartHeight());
+        assertEquals(200000, index.getHeight());
+        assertEquals(hash(0), index.get(0));
+        assertEquals(hash(123456), index.get(123456));
+        assertEquals(hash(200000), index.get(200000));
+        index.close();
+    }
+
+    @Test
+    public void growingKeepsEntriesAcrossRemaps() throws Exception {
+        BestChainIndex index = new BestChainIndex(file);
+
+        // a kezdeti kapacitásnál jóval több bejegyzés: a fájlt többször újból leképezzük
+        for(int h = 0; h <= 300000; ++h){
+            index.put(h, hash(h));
+        }
+        assertEquals(hash(0), index.get(0));
+        assertTrue(index.contains(300000, hash(300000)));
+        index.close();
+
+        BestChainIndex reopened = new BestChainIndex(file);
+        assertEquals(300000, reopened.getHeight());
+        assertEquals(hash(65536), reopened.get(65536));
+        reopened.close();
+    }
+}
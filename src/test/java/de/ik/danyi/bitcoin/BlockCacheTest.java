@@ -0,0 +1,104 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * A blokk-gyorsítótár tesztjei: a lemezen tárolt szegmensek összmérete korlátos, a legrégebbi szegmens
+ * törlésekor a blokkjai az indexből is kikerülnek, az újabb blokkok pedig újranyitás után is elérhetők.
+ */
+public class BlockCacheTest {
+
+    private static final NetworkParameters params = MainNetParams.get();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("blockcache", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown(){
+        File[] files = directory.listFiles();
+        if(files != null){
+            for(File file: files){
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static Sha256Hash hash(int i){
+        return Sha256Hash.create(("blokk " + i).getBytes());
+    }
+
+    private static BlockTransactions block(int i){
+        Transaction tx = new Transaction(params);
+        tx.addOutput(Coin.valueOf(i + 1), new ECKey());
+
+        List<Transaction> transactions = new ArrayList<Transaction>();
+        transactions.add(tx);
+        return new BlockTransactions(hash(i), transactions);
+    }
+
+    @Test
+    public void oldestSegmentsAreEvicted() throws Exception {
+        BlockCache cache = new BlockCache(params, directory, 1000, 4000);
+
+        for(int i=0; i<100; ++i){
+            cache.put(block(i), BlockCache.FULL_BLOCK);
+        }
+
+        long diskBytes = 0;
+        for(File file: directory.listFiles()){
+            diskBytes += file.length();
+        }
+
+        // a korlátot legfeljebb az épp írt szegmens lépheti túl
+        assertTrue(diskBytes <= 4000 + 1000);
+        assertTrue(cache.size() < 100);
+
+        assertNotNull(cache.get(hash(99), BlockCache.FULL_BLOCK));
+        cache.close();
+    }
+
+    @Test
+    public void indexIsRebuiltAfterEviction() throws Exception {
+        BlockCache cache = new BlockCache(params, directory, 1000, 4000);
+        for(int i=0; i<100; ++i){
+            cache.put(block(i), BlockCache.FULL_BLOCK);
+        }
+        int size = cache.size();
+        cache.close();
+
+        // a szegmensek sorszámozása már nem nulláról indul; a törölt szegmensek blokkjai nem érhetők el
+        cache = new BlockCache(params, directory, 1000, 4000);
+        assertEquals(size, cache.size());
+        assertNull(cache.get(hash(0), BlockCache.FULL_BLOCK));
+
+        BlockTransactions block = cache.get(hash(99), BlockCache.FULL_BLOCK);
+        assertNotNull(block);
+        assertEquals(block(99).getTransactions().get(0).getOutput(0).getValue(),
+                block.getTransactions().get(0).getOutput(0).getValue());
+
+        // az újabb blokkok az utolsó szegmens után kerülnek
+        cache.put(block(100), BlockCache.FULL_BLOCK);
+        assertNotNull(cache.get(hash(100), BlockCache.FULL_BLOCK));
+        cache.close();
+    }
+}
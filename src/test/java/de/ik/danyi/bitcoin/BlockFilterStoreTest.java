@@ -0,0 +1,155 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.*;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.script.ScriptBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * A blokkszűrők tesztjei: a szűrő a BIP158 elemeit (kimenetek és elköltött kimenetek zároló szkriptjeit)
+ * tartalmazza, így a címünk szkriptje alapján a fogadás és az elköltés is kimutatható.
+ */
+public class BlockFilterStoreTest {
+
+    private static final NetworkParameters params = UnitTestParams.get();
+
+    private File file;
+    private BlockFilterStore store;
+
+    private final ECKey myKey = new ECKey();
+    private byte[] myScript;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("blockfilters", ".dat");
+        store = new BlockFilterStore(file);
+        myScript = ScriptBuilder.createOutputScript(myKey.toAddress(params)).getProgram();
+    }
+
+    @After
+    public void tearDown(){
+        store.close();
+        file.delete();
+    }
+
+    private static Transaction spend(Sha256Hash prevTxHash, long index, ECKey to){
+        Transaction tx = new Transaction(params);
+        tx.addInput(prevTxHash, index, new ScriptBuilder().data(("aláírás " + prevTxHash).getBytes()).build());
+        tx.addOutput(Coin.valueOf(1000), to);
+        return tx;
+    }
+
+    private static BlockTransactions block(String name, Transaction... txs){
+        List<Transaction> transactions = new ArrayList<Transaction>();
+        Collections.addAll(transactions, txs);
+        return new BlockTransactions(Sha256Hash.create(name.getBytes()), transactions);
+    }
+
+    private boolean mayContainMyScript(Sha256Hash blockHash){
+        return store.mayContain(blockHash, Collections.singletonList(myScript));
+    }
+
+    @Test
+    public void receivingBlockMatches(){
+        Transaction received = new Transaction(params);
+        received.addInput(Sha256Hash.create("idegen".getBytes()), 0,
+                new ScriptBuilder().data("aláírás".getBytes()).build());
+        received.addOutput(Coin.COIN, myKey.toAddress(params));
+
+        BlockTransactions block = block("fogadás", received, spend(Sha256Hash.create("x".getBytes()), 1, new ECKey()));
+        store.put(block, Collections.<Sha256Hash, Transaction>emptyMap());
+
+        assertTrue(mayContainMyScript(block.getBlockHash()));
+    }
+
+    @Test
+    public void spendingBlockMatchesByPrevOutScript(){
+        // a korábban kapott kimenetünk a tárcánkban van; az elköltő tranzakció kimenete idegen címre szól
+        Transaction received = new Transaction(params);
+        received.addInput(Sha256Hash.create("idegen".getBytes()), 0,
+                new ScriptBuilder().data("aláírás".getBytes()).build());
+        received.addOutput(Coin.COIN, myKey.toAddress(params));
+
+        Map<Sha256Hash, Transaction> walletTxs = new HashMap<Sha256Hash, Transaction>();
+        walletTxs.put(received.getHash(), received);
+
+        BlockTransactions block = block("elköltés", spend(received.getHash(), 0, new ECKey()));
+        store.put(block, walletTxs);
+
+        assertTrue(mayContainMyScript(block.getBlockHash()));
+    }
+
+    @Test
+    public void spendWithinBlockMatches(){
+        // a kimenetünket ugyanabban a blokkban kaptuk és költöttük el
+        Transaction received = new Transaction(params);
+        received.addInput(Sha256Hash.create("idegen".getBytes()), 0,
+                new ScriptBuilder().data("aláírás".getBytes()).build());
+        received.addOutput(Coin.COIN, myKey.toAddress(params));
+
+        List<byte[]> elements = BlockFilterStore.getElements(
+                block("blokk", received, spend(received.getHash(), 0, new ECKey())).getTransactions(),
+                Collections.<Sha256Hash, Transaction>emptyMap());
+
+        int matches = 0;
+        for(byte[] element: elements){
+            if(Arrays.equals(element, myScript)){
+                ++matches;
+            }
+        }
+        assertEquals(2, matches);
+    }
+
+    @Test
+    public void unrelatedBlockDoesNotMatch() throws Exception {
+        BlockTransactions block = block("idegen",
+                spend(Sha256Hash.create("a".getBytes()), 0, new ECKey()),
+                spend(Sha256Hash.create("b".getBytes()), 3, new ECKey()));
+        store.put(block, Collections.<Sha256Hash, Transaction>emptyMap());
+
+        assertFalse(mayContainMyScript(block.getBlockHash()));
+
+        // a szűrő újranyitás után is megmarad; szűrő hiányában a blokkot relevánsnak tekintjük
+        store.close();
+        store = new BlockFilterStore(file);
+        assertFalse(mayContainMyScript(block.getBlockHash()));
+        assertTrue(mayContainMyScript(Sha256Hash.create("ismeretlen".getBytes())));
+    }
+
+    @Test
+    public void clearedFiltersMatchImportedKey() throws Exception {
+        // az importált kulcs kimenetét elköltő blokk szűrője a kulcs tranzakcióinak ismerete nélkül készült
+        Transaction received = new Transaction(params);
+        received.addInput(Sha256Hash.create("idegen".getBytes()), 0,
+                new ScriptBuilder().data("aláírás".getBytes()).build());
+        received.addOutput(Coin.COIN, myKey.toAddress(params));
+
+        BlockTransactions block = block("elköltés", spend(received.getHash(), 0, new ECKey()));
+        store.put(block, Collections.<Sha256Hash, Transaction>emptyMap());
+        assertFalse(mayContainMyScript(block.getBlockHash()));
+
+        // törlés után a blokk újból releváns, és az új szűrő már az ismert tranzakcióval készül
+        store.clear();
+        assertTrue(mayContainMyScript(block.getBlockHash()));
+
+        store.put(block, Collections.singletonMap(received.getHash(), received));
+        assertTrue(mayContainMyScript(block.getBlockHash()));
+
+        store.close();
+        store = new BlockFilterStore(file);
+        assertTrue(store.contains(block.getBlockHash()));
+        assertTrue(mayContainMyScript(block.getBlockHash()));
+    }
+}
@@ -0,0 +1,125 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.*;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.script.ScriptBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * A BIP37 szűrés tesztjei egy helyettesítő csomóponttal: a csomópont üzeneteit (version, merkleblock, tx)
+ * úgy állítjuk elő, ahogy azok a hálózaton érkeznének, majd a beolvasott üzeneteket dolgozzuk fel.
+ */
+public class BloomFilteringTest {
+
+    private static final NetworkParameters params = UnitTestParams.get();
+
+    private Block block;
+    private List<Transaction> txs;
+
+    @Before
+    public void setUp(){
+        Address address = new ECKey().toAddress(params);
+        block = params.getGenesisBlock().createNextBlock(address);
+
+        txs = new ArrayList<Transaction>();
+        for(int i=0; i<4; ++i){
+            Transaction tx = new Transaction(params);
+            tx.addInput(Sha256Hash.create(("előzmény " + i).getBytes()), 0,
+                    new ScriptBuilder().data(("aláírás " + i).getBytes()).build());
+            tx.addOutput(Coin.valueOf(1000 + i), new ECKey());
+            block.addTransaction(tx);
+            txs.add(tx);
+        }
+    }
+
+    // a helyettesítő csomópont üzenetének átvitele: szerializálás, majd a fogadó oldali beolvasás
+    private static Message transmit(Message message) throws Exception {
+        BitcoinSerializer serializer = new BitcoinSerializer(params);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        serializer.serialize(message, bytes);
+        return serializer.deserialize(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    private static VersionMessage versionMessage(long services) throws Exception {
+        VersionMessage versionMessage = new VersionMessage(params, 100);
+        versionMessage.localServices = services;
+        return (VersionMessage)transmit(versionMessage);
+    }
+
+    // a blokk szűrt változata, amelyben a megadott tranzakciók felelnek meg a szűrőnek
+    private FilteredBlock filteredBlock(Transaction... matched) throws Exception {
+        List<Sha256Hash> hashes = new ArrayList<Sha256Hash>();
+        byte[] bits = new byte[(block.getTransactions().size() + 7) / 8];
+
+        for(int i=0; i<block.getTransactions().size(); ++i){
+            Transaction tx = block.getTransactions().get(i);
+            hashes.add(tx.getHash());
+
+            for(Transaction m: matched){
+                if(m.getHash().equals(tx.getHash())){
+                    bits[i / 8] |= 1 << (i % 8);
+                }
+            }
+        }
+
+        PartialMerkleTree tree = PartialMerkleTree.buildFromLeaves(params, bits, hashes);
+        return (FilteredBlock)transmit(new FilteredBlock(params, block.cloneAsHeader(), tree));
+    }
+
+    @Test
+    public void bloomFilteringRequiresServiceBit() throws Exception {
+        // az újabb protokollverzió önmagában nem elég
+        VersionMessage withoutBloom = versionMessage(VersionMessage.NODE_NETWORK);
+        assertTrue(withoutBloom.isBloomFilteringSupported());
+        assertFalse(Node.supportsBloomFiltering(withoutBloom));
+
+        VersionMessage withBloom = versionMessage(VersionMessage.NODE_NETWORK | Node.NODE_BLOOM);
+        assertTrue(Node.supportsBloomFiltering(withBloom));
+    }
+
+    @Test
+    public void filteredBlockContainsResentTransactions() throws Exception {
+        FilteredBlock filteredBlock = filteredBlock(txs.get(0), txs.get(2));
+        filteredBlock.provideTransaction((Transaction)transmit(txs.get(0)));
+        filteredBlock.provideTransaction((Transaction)transmit(txs.get(2)));
+
+        BlockTransactions blockTransactions =
+                new BlockTransactions(filteredBlock, Collections.<Sha256Hash, Transaction>emptyMap());
+
+        assertEquals(block.getHash(), blockTransactions.getBlockHash());
+        assertEquals(2, blockTransactions.getTransactions().size());
+        assertNotNull(blockTransactions.getTransaction(txs.get(0).getHash()));
+        assertNotNull(blockTransactions.getTransaction(txs.get(2).getHash()));
+        assertNull(blockTransactions.getTransaction(txs.get(1).getHash()));
+    }
+
+    @Test
+    public void walletTransactionsFillFilteredBlock() throws Exception {
+        // a csomópont a korábban már elküldött tranzakciót nem küldi el újból
+        FilteredBlock filteredBlock = filteredBlock(txs.get(1), txs.get(3));
+        filteredBlock.provideTransaction((Transaction)transmit(txs.get(3)));
+
+        Map<Sha256Hash, Transaction> walletTxs = new HashMap<Sha256Hash, Transaction>();
+        walletTxs.put(txs.get(1).getHash(), txs.get(1));
+
+        BlockTransactions blockTransactions = new BlockTransactions(filteredBlock, walletTxs);
+
+        assertEquals(2, blockTransactions.getTransactions().size());
+        assertSame(txs.get(1), blockTransactions.getTransaction(txs.get(1).getHash()));
+        assertNotNull(blockTransactions.getTransaction(txs.get(3).getHash()));
+
+        // a tranzakciók a blokkbeli sorrendben követik egymást
+        assertEquals(txs.get(1).getHash(), blockTransactions.getTransactions().get(0).getHash());
+    }
+}
@@ -0,0 +1,139 @@
+package de.ik.danyi.bitcoin;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * A DNS szerverek lekérdezésének tesztjei helyettesítő névfeloldóval: a szerverek párhuzamos lekérdezése,
+ * a határidő, valamint az egyes szerverek hibája esetén a többi szerver címeinek feldolgozása.
+ */
+public class DnsSeederTest {
+
+    private TimingWheel timingWheel;
+
+    // DNS szerver -> a kapott címek
+    private final Map<String, InetAddress[]> resolved = new ConcurrentHashMap<String, InetAddress[]>();
+
+    private final DnsSeeder.Listener listener = new DnsSeeder.Listener() {
+        @Override
+        public void addressesResolved(String seed, InetAddress[] addrs) {
+            resolved.put(seed, addrs);
+        }
+    };
+
+    @Before
+    public void setUp(){
+        timingWheel = new TimingWheel(10, 64);
+    }
+
+    private static InetAddress[] addresses(int last) throws UnknownHostException {
+        return new InetAddress[]{ InetAddress.getByAddress(new byte[]{10, 0, 0, (byte)last}) };
+    }
+
+    // megvárja a lekérdezési kör végét
+    private static void awaitFinished(DnsSeeder seeder, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (seeder.isRunning() && System.currentTimeMillis() < deadline){
+            Thread.sleep(5);
+        }
+        assertFalse(seeder.isRunning());
+    }
+
+    @Test
+    public void seedsAreResolvedInParallel() throws Exception {
+        final String[] seeds = { "seed1", "seed2", "seed3" };
+
+        // minden névfeloldás megvárja, hogy a többi is elinduljon; soros lekérdezés esetén ez nem teljesülne
+        final CountDownLatch allStarted = new CountDownLatch(seeds.length);
+
+        DnsSeeder seeder = new DnsSeeder(new SeedResolver() {
+            @Override
+            public InetAddress[] resolve(String seed) throws UnknownHostException {
+                allStarted.countDown();
+                try {
+                    if(!allStarted.await(2, TimeUnit.SECONDS)){
+                        throw new UnknownHostException(seed);
+                    }
+                } catch (InterruptedException e) {
+                    throw new UnknownHostException(seed);
+                }
+                return addresses(seed.charAt(4) - '0');
+            }
+        }, timingWheel);
+
+        assertTrue(seeder.resolve(seeds, 5000, listener));
+        awaitFinished(seeder, 5000);
+
+        assertEquals(3, resolved.size());
+        assertEquals(addresses(2)[0], resolved.get("seed2")[0]);
+    }
+
+    @Test
+    public void slowSeedTimesOut() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        DnsSeeder seeder = new DnsSeeder(new SeedResolver() {
+            @Override
+            public InetAddress[] resolve(String seed) throws UnknownHostException {
+                if(seed.equals("lassú")){
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new UnknownHostException(seed);
+                    }
+                }
+                return addresses(1);
+            }
+        }, timingWheel);
+
+        long start = System.currentTimeMillis();
+        assertTrue(seeder.resolve(new String[]{ "gyors", "lassú" }, 200, listener));
+
+        // egy kör közben újabb kör nem indítható
+        assertFalse(seeder.resolve(new String[]{ "másik" }, 200, listener));
+
+        awaitFinished(seeder, 3000);
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        assertTrue(resolved.containsKey("gyors"));
+
+        // a határidő után beérkező választ eldobjuk
+        release.countDown();
+        Thread.sleep(100);
+        assertFalse(resolved.containsKey("lassú"));
+    }
+
+    @Test
+    public void failingSeedsDoNotAffectOthers() throws Exception {
+        DnsSeeder seeder = new DnsSeeder(new SeedResolver() {
+            @Override
+            public InetAddress[] resolve(String seed) throws UnknownHostException {
+                if(seed.equals("hibás")){
+                    throw new UnknownHostException(seed);
+                }
+                if(seed.equals("üres")){
+                    return new InetAddress[0];
+                }
+                return addresses(7);
+            }
+        }, timingWheel);
+
+        assertTrue(seeder.resolve(new String[]{ "hibás", "jó", "üres" }, 2000, listener));
+        awaitFinished(seeder, 3000);
+
+        assertEquals(1, resolved.size());
+        assertTrue(resolved.containsKey("jó"));
+
+        // a kör befejeződött, így új kör indítható
+        assertTrue(seeder.resolve(new String[]{ "jó" }, 2000, listener));
+        awaitFinished(seeder, 3000);
+    }
+}
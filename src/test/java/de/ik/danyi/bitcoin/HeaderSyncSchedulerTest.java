@@ -0,0 +1,170 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * A blokkfej-letöltés ütemezőjének tesztjei: csak a kiosztott tartományokra érkező adagokat tároljuk el,
+ * korlátos mennyiségben, a tail magasságát a ténylegesen kapcsolódó blokkból számoljuk, az érvénytelennek
+ * bizonyult adag tartománya pedig újból kiosztható.
+ */
+public class HeaderSyncSchedulerTest {
+
+    private static final NetworkParameters params = MainNetParams.get();
+
+    private HeaderSyncScheduler scheduler;
+    private StoredBlock chainHead;
+
+    @Before
+    public void setUp(){
+        scheduler = new HeaderSyncScheduler();
+        chainHead = new StoredBlock(header(Sha256Hash.ZERO_HASH, 0), BigInteger.ONE, 100);
+    }
+
+    private static Block header(Sha256Hash prevHash, long nonce){
+        return new Block(params, 1, prevHash, Sha256Hash.ZERO_HASH, 1231006505L, 0x1d00ffffL, nonce,
+                new ArrayList<Transaction>());
+    }
+
+    private static List<Block> headers(Sha256Hash prevHash, int count, long nonce){
+        List<Block> headers = new ArrayList<Block>();
+        for(int i=0; i<count; ++i){
+            Block block = header(prevHash, nonce + i);
+            headers.add(block);
+            prevHash = block.getHash();
+        }
+        return headers;
+    }
+
+    private static Sha256Hash lastHash(List<Block> headers){
+        return headers.get(headers.size() - 1).getHash();
+    }
+
+    @Test
+    public void unsolicitedBatchIsNotBuffered(){
+        scheduler.plan(chainHead, Collections.<StoredBlock>emptyList());
+
+        // nem kiosztott tartományra érkezett, nem kapcsolódó adag
+        List<Block> batch = headers(Sha256Hash.create("ismeretlen".getBytes()), 10, 0);
+
+        assertFalse(scheduler.received(batch, -1));
+        assertEquals(0, scheduler.getBufferedHeaders());
+    }
+
+    @Test
+    public void bufferedHeadersAreCapped(){
+        // egyetlen, sok adagból álló tartomány, amelynek eleje még nem kapcsolódik a lánchoz
+        StoredBlock checkpoint = new StoredBlock(header(Sha256Hash.ZERO_HASH, -1), BigInteger.ONE, 100000);
+        scheduler.plan(chainHead, Collections.singletonList(checkpoint));
+
+        Sha256Hash prevHash = chainHead.getHeader().getHash();
+        int accepted = 0;
+
+        for(int i=0; i<20; ++i){
+            HeaderSyncScheduler.Segment segment = scheduler.assign(Long.MAX_VALUE);
+            assertNotNull(segment);
+            assertEquals(prevHash, segment.getCursor());
+
+            List<Block> batch = headers(prevHash, 2000, i * 2000L);
+            if(!scheduler.received(batch, -1)){
+                break;
+            }
+
+            ++accepted;
+            prevHash = lastHash(batch);
+        }
+
+        assertEquals(16, accepted);
+        assertEquals(16 * 2000, scheduler.getBufferedHeaders());
+
+        // az eldobott adag tartománya újból kiosztható, ugyanattól a kezdő blokktól
+        HeaderSyncScheduler.Segment segment = scheduler.assign(Long.MAX_VALUE);
+        assertEquals(prevHash, segment.getCursor());
+    }
+
+    @Test
+    public void bufferedBatchIsTakenOnce(){
+        Sha256Hash headHash = chainHead.getHeader().getHash();
+        List<Block> first = headers(headHash, 100, 0);
+        List<Block> second = headers(lastHash(first), 100, 100);
+
+        // két, egyenként 100 blokkos tartomány (és a tail)
+        List<StoredBlock> checkpoints = new ArrayList<StoredBlock>();
+        checkpoints.add(new StoredBlock(first.get(first.size() - 1), BigInteger.ONE, 200));
+        checkpoints.add(new StoredBlock(second.get(second.size() - 1), BigInteger.ONE, 300));
+        scheduler.plan(chainHead, checkpoints);
+
+        assertNotNull(scheduler.assign(Long.MAX_VALUE));
+        assertNotNull(scheduler.assign(Long.MAX_VALUE));
+
+        assertTrue(scheduler.received(second, -1));
+        assertEquals(100, scheduler.getBufferedHeaders());
+
+        assertTrue(scheduler.received(first, 100));
+        assertSame(second, scheduler.takeBuffered(lastHash(first)).getHeaders());
+        assertNull(scheduler.takeBuffered(lastHash(first)));
+        assertEquals(0, scheduler.getBufferedHeaders());
+    }
+
+    @Test
+    public void rejectedBatchSegmentIsReassigned(){
+        Sha256Hash headHash = chainHead.getHeader().getHash();
+        List<Block> first = headers(headHash, 100, 0);
+        List<Block> second = headers(lastHash(first), 50, 100);
+        List<Block> third = headers(lastHash(second), 50, 150);
+
+        StoredBlock checkpoint = new StoredBlock(third.get(third.size() - 1), BigInteger.ONE, 300);
+        scheduler.plan(chainHead, Collections.singletonList(checkpoint));
+
+        // a tartomány három adagban érkezik; a második és a harmadik még nem kapcsolódik
+        assertNotNull(scheduler.assign(Long.MAX_VALUE));
+        assertTrue(scheduler.received(first, 100));
+        assertNotNull(scheduler.assign(Long.MAX_VALUE));
+        assertTrue(scheduler.received(second, -1));
+        assertNotNull(scheduler.assign(Long.MAX_VALUE));
+        assertTrue(scheduler.received(third, -1));
+
+        // a tartomány letöltése befejeződött, csak a tail osztható ki
+        assertTrue(scheduler.assign(Long.MAX_VALUE).isTail());
+
+        // a második adag beépítése meghiúsult; az arra épülő harmadik adagot is eldobjuk
+        assertSame(second, scheduler.takeBuffered(lastHash(first)).getHeaders());
+        scheduler.rejected(second, lastHash(first), 200);
+        assertEquals(0, scheduler.getBufferedHeaders());
+
+        HeaderSyncScheduler.Segment segment = scheduler.assign(Long.MAX_VALUE);
+        assertNotNull(segment);
+        assertFalse(segment.isTail());
+        assertEquals(lastHash(first), segment.getCursor());
+        assertEquals(200, segment.getCursorHeight());
+    }
+
+    @Test
+    public void tailHeightIsDerivedFromConnectingHeader(){
+        scheduler.plan(chainHead, Collections.<StoredBlock>emptyList());
+
+        HeaderSyncScheduler.Segment tail = scheduler.assign(Long.MAX_VALUE);
+        assertTrue(tail.isTail());
+
+        // a válasz egy korábbi (pl. 90-es magasságú) blokkhoz kapcsolódik, nem a tail kezdőblokkjához
+        List<Block> batch = headers(Sha256Hash.create("elágazás".getBytes()), 30, 0);
+        assertTrue(scheduler.received(batch, 90));
+
+        tail = scheduler.assign(Long.MAX_VALUE);
+        assertEquals(lastHash(batch), tail.getCursor());
+        assertEquals(120, tail.getCursorHeight());
+    }
+}
@@ -0,0 +1,66 @@
+package de.ik.danyi.bitcoin;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * A feldolgozási futószalag tesztjei: teli sor esetén az offer nem várakoztatja a hívót (a hálózati
+ * szálat), hanem eldobja a feladatot; a sor kiürülése után újból fogad feladatot.
+ */
+public class MessagePipelineTest {
+
+    @Test(timeout = 5000)
+    public void offerNeverBlocksOnFullStage() throws Exception {
+        MessagePipeline pipeline = new MessagePipeline();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        // a szakasz szálát egy feladattal feltartjuk
+        assertTrue(pipeline.offer(MessagePipeline.HEADERS, new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        final CountDownLatch done = new CountDownLatch(1);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+
+        MessagePipeline.Stage stage = pipeline.getStage(MessagePipeline.HEADERS);
+        int accepted = 0;
+        while (pipeline.offer(MessagePipeline.HEADERS, task)){
+            ++accepted;
+        }
+
+        assertEquals(accepted, stage.getDepth());
+        assertEquals(0, stage.getRemainingCapacity());
+        assertFalse(pipeline.offer(MessagePipeline.HEADERS, task));
+        assertEquals(2, stage.getDropped());
+
+        // a többi szakaszt a teli sor nem érinti
+        assertTrue(pipeline.offer(MessagePipeline.CONTROL, task));
+
+        release.countDown();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+
+        while (stage.getDepth() > 0){
+            Thread.sleep(5);
+        }
+        assertTrue(pipeline.offer(MessagePipeline.HEADERS, task));
+    }
+}
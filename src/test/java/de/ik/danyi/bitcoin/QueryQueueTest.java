@@ -0,0 +1,245 @@
+package de.ik.danyi.bitcoin;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * A lekérési sor tesztjei: az elavult bejegyzések miatt a sor nem nőhet korlátlanul, a még használt
+ * (újból bejelentett) kész hash értékek nem kerülnek ki, és a műveletek nagy elemszám mellett is gyorsak.
+ */
+public class QueryQueueTest {
+
+    // a Sha256Hash.hashCode az utolsó négy bájtból számol, így a sorszámot oda írjuk
+    private static Sha256Hash hash(int i){
+        byte[] bytes = new byte[32];
+        for(int b=0; b<4; ++b){
+            bytes[31 - b] = (byte)(i >>> (8 * b));
+        }
+        return new Sha256Hash(bytes);
+    }
+
+    @Test
+    public void requestsInOrderAndRetriesFailed(){
+        Utils.QueryQueue queue = new Utils.QueryQueue();
+        for(int i=0; i<5; ++i){
+            assertTrue(queue.addHash(hash(i)));
+        }
+        assertFalse(queue.addHash(hash(0)));
+
+        List<Sha256Hash> first = queue.getNextHashes(3);
+        assertEquals(3, first.size());
+        assertEquals(hash(0), first.get(0));
+
+        queue.queryIsDone(hash(0));
+        queue.queryIsFailed(hash(1));
+
+        List<Sha256Hash> rest = queue.getNextHashes(10);
+        assertEquals(3, rest.size());
+        assertEquals(hash(3), rest.get(0));
+        assertEquals(hash(1), rest.get(2));
+        assertTrue(queue.isDone());
+    }
+
+    @Test
+    public void staleEntriesAreCompacted(){
+        Utils.QueryQueue queue = new Utils.QueryQueue();
+
+        // a lekérés előtt más úton megérkezett tartalmak bejegyzései a sorban elavulttá válnak
+        for(int i=0; i<100000; ++i){
+            queue.addHash(hash(i));
+            queue.queryIsDone(hash(i));
+        }
+
+        assertTrue(queue.isDone());
+        assertTrue(queue.getQueueLength() <= 2048);
+        assertTrue(queue.getNextHashes(10).isEmpty());
+    }
+
+    @Test
+    public void compactionKeepsReadyHashes(){
+        Utils.QueryQueue queue = new Utils.QueryQueue();
+
+        for(int i=0; i<10000; ++i){
+            queue.addHash(hash(i));
+        }
+
+        // minden második hash érték kész lesz, mielőtt lekérnénk
+        for(int i=0; i<10000; i += 2){
+            queue.queryIsDone(hash(i));
+        }
+
+        List<Sha256Hash> hashes = queue.getNextHashes(10000);
+        assertEquals(5000, hashes.size());
+        for(int i=0; i<hashes.size(); ++i){
+            assertEquals(hash(2 * i + 1), hashes.get(i));
+        }
+    }
+
+    @Test
+    public void announcedDoneHashesAreKept(){
+        Utils.QueryQueue queue = new Utils.QueryQueue(100);
+
+        queue.addHash(hash(0));
+        queue.queryIsDone(queue.getNextHash());
+
+        for(int i=1; i<1000; ++i){
+            queue.addHash(hash(i));
+            queue.queryIsDone(queue.getNextHash());
+
+            // a hash(0) tartalmat a csomópontok újból bejelentik; nem kérjük le újra
+            assertFalse(queue.addHash(hash(0)));
+        }
+
+        assertTrue(queue.isDone());
+        assertTrue(queue.getKnownCount() <= 100);
+
+        // a régóta nem használt hash értékeket elfelejtettük
+        assertTrue(queue.addHash(hash(1)));
+    }
+
+    @Test(timeout = 10000)
+    public void throughput(){
+        Utils.QueryQueue queue = new Utils.QueryQueue();
+        int count = 500000;
+
+        long start = System.nanoTime();
+        for(int i=0; i<count; ++i){
+            queue.addHash(hash(i));
+        }
+
+        int received = 0;
+        List<Sha256Hash> batch;
+        while (!(batch = queue.getNextHashes(500)).isEmpty()){
+            for(Sha256Hash hash: batch){
+                // minden tizedik lekérés sikertelen, ezeket újból lekérjük
+                if(received++ % 10 == 0){
+                    queue.queryIsFailed(hash);
+                }else{
+                    queue.queryIsDone(hash);
+                }
+            }
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+
+        System.out.println(String.format("QueryQueue: %d hash érték %d ms alatt.", count, elapsed));
+        assertTrue(queue.isDone());
+        assertTrue(queue.getKnownCount() <= 100000);
+    }
+
+    /**
+     * Összehasonlítás a korábbi, LinkedHashMap-et bejáró megvalósítással (LegacyQueryQueue), a
+     * NodeManager egykori használatának megfelelően: amíg van lekérendő hash érték (isDone), egyenként
+     * kérjük le őket (getNextHash), minden tizedik lekérés sikertelen.
+     */
+    @Test(timeout = 60000)
+    public void fasterThanLegacyImplementation(){
+        int count = 20000;
+
+        // bemelegítés, hogy a JIT mindkét megvalósítást lefordítsa
+        runLegacy(2000);
+        runCurrent(2000);
+
+        long legacy = runLegacy(count);
+        long current = runCurrent(count);
+
+        System.out.println(String.format("QueryQueue, %d hash érték: korábbi %d ms, jelenlegi %d ms.",
+                count, legacy / 1000000L, current / 1000000L));
+        assertTrue(current < legacy);
+    }
+
+    private static long runCurrent(int count){
+        Utils.QueryQueue queue = new Utils.QueryQueue();
+
+        long start = System.nanoTime();
+        for(int i=0; i<count; ++i){
+            queue.addHash(hash(i));
+        }
+
+        int received = 0;
+        while (!queue.isDone()){
+            Sha256Hash hash = queue.getNextHash();
+            if(received++ % 10 == 0){
+                queue.queryIsFailed(hash);
+            }else{
+                queue.queryIsDone(hash);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runLegacy(int count){
+        LegacyQueryQueue queue = new LegacyQueryQueue();
+
+        long start = System.nanoTime();
+        for(int i=0; i<count; ++i){
+            queue.addHash(hash(i));
+        }
+
+        int received = 0;
+        while (!queue.isDone()){
+            Sha256Hash hash = queue.getNextHash();
+            if(received++ % 10 == 0){
+                queue.queryIsFailed(hash);
+            }else{
+                queue.queryIsDone(hash);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    // a QueryQueue korábbi megvalósítása (a naplózás nélkül) az összehasonlításhoz
+    private static class LegacyQueryQueue{
+
+        // 0: lekért, 1: lekérendő
+        private LinkedHashMap<Sha256Hash, Integer> linkedHashMap = new LinkedHashMap<Sha256Hash, Integer>();
+
+        public synchronized boolean addHash(Sha256Hash hash){
+            if(!linkedHashMap.containsKey(hash)){
+                linkedHashMap.put(hash, 1);
+                return true;
+            }
+
+            return false;
+        }
+
+        public synchronized Sha256Hash getNextHash(){
+            for(Map.Entry<Sha256Hash, Integer> hash: linkedHashMap.entrySet()){
+                if(hash.getValue() == 1){
+                    hash.setValue(0);
+                    return hash.getKey();
+                }
+            }
+
+            return null;
+        }
+
+        private boolean setQueryStatus(Sha256Hash hash, int status){
+            boolean isReplaced = false;
+
+            if(linkedHashMap.containsKey(hash)){
+                isReplaced = linkedHashMap.replace(hash, linkedHashMap.get(hash), status);
+            }
+
+            return isReplaced;
+        }
+
+        public synchronized boolean queryIsDone(Sha256Hash hash){
+            return setQueryStatus(hash, 0);
+        }
+
+        public synchronized boolean queryIsFailed(Sha256Hash hash){
+            return setQueryStatus(hash, 1);
+        }
+
+        public synchronized boolean isDone(){
+            return !linkedHashMap.containsValue(1);
+        }
+    }
+}